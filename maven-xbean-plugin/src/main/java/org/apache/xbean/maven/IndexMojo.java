@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.xbean.finder.FinderIndex;
+
+/**
+ * Writes the xbean-finder index of the compiled classes, the index is packaged
+ * with the classes and read by the AnnotationFinder instead of scanning the jar.
+ *
+ * @version $Rev$ $Date$
+ * @goal index
+ * @description Creates the xbean-finder index of the project classes
+ * @phase process-classes
+ */
+public class IndexMojo extends AbstractMojo {
+
+    /**
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    private File classesDirectory;
+
+    /**
+     * @parameter expression="${xbean.index.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the xbean-finder index");
+            return;
+        }
+        if (!classesDirectory.isDirectory()) {
+            getLog().info("No classes to index in " + classesDirectory);
+            return;
+        }
+
+        try {
+            final File index = FinderIndex.write(classesDirectory);
+            getLog().info("Wrote xbean-finder index " + index);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write the xbean-finder index of " + classesDirectory, e);
+        }
+    }
+}
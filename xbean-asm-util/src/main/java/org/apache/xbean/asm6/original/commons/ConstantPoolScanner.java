@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.asm6.original.commons;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Walks the constant pool of a class file, without parsing the rest of the class,
+ * to tell if one of the given type descriptors (for instance "Ljavax/inject/Inject;") is used.
+ * <p/>
+ * An annotation present on the class or on one of its members always has its descriptor
+ * in the constant pool so a class without any match can't carry these annotations.
+ * The scanner is immutable and can be shared between threads.
+ */
+public class ConstantPoolScanner {
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD = 9;
+    private static final int METHOD = 10;
+    private static final int INTERFACE_METHOD = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int CONDY = 17;
+    private static final int INDY = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private final byte[][] descriptors;
+
+    public ConstantPoolScanner(Collection<String> descriptors) {
+        this.descriptors = new byte[descriptors.size()][];
+        int i = 0;
+        for (String descriptor : descriptors) {
+            this.descriptors[i++] = encode(descriptor);
+        }
+    }
+
+    /**
+     * @return true if one of the descriptors is in the constant pool, or if the
+     * class file can't be understood, ASM will then report the actual problem
+     */
+    public boolean containsAny(byte[] bytecode, int offset, int length) {
+        final int end = offset + length;
+        if (length < 10 || readInt(bytecode, offset) != 0xCAFEBABE) return true;
+
+        final int count = readUnsignedShort(bytecode, offset + 8);
+        int position = offset + 10;
+        for (int i = 1; i < count; i++) {
+            if (position >= end) return true;
+
+            switch (bytecode[position]) {
+                case UTF8:
+                    if (position + 3 > end) return true;
+                    final int size = readUnsignedShort(bytecode, position + 1);
+                    if (position + 3 + size > end) return true;
+                    if (matches(bytecode, position + 3, size)) return true;
+                    position += 3 + size;
+                    break;
+                case CLASS:
+                case STRING:
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    position += 3;
+                    break;
+                case METHOD_HANDLE:
+                    position += 4;
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD:
+                case METHOD:
+                case INTERFACE_METHOD:
+                case NAME_AND_TYPE:
+                case CONDY:
+                case INDY:
+                    position += 5;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    position += 9;
+                    i++; // takes two slots
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(byte[] bytecode, int offset, int size) {
+        for (byte[] descriptor : descriptors) {
+            if (descriptor.length == size && equals(descriptor, bytecode, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equals(byte[] descriptor, byte[] bytecode, int offset) {
+        // descriptors mainly differ by their end, compare backward
+        for (int i = descriptor.length - 1; i >= 0; i--) {
+            if (descriptor[i] != bytecode[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] b, int index) {
+        return ((b[index] & 0xFF) << 24) | ((b[index + 1] & 0xFF) << 16) | ((b[index + 2] & 0xFF) << 8) | (b[index + 3] & 0xFF);
+    }
+
+    private static int readUnsignedShort(byte[] b, int index) {
+        return ((b[index] & 0xFF) << 8) | (b[index + 1] & 0xFF);
+    }
+
+    /**
+     * The class file stores its strings in the modified UTF-8 of DataOutput.
+     */
+    private static byte[] encode(String descriptor) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(descriptor.length() + 2);
+            new DataOutputStream(bytes).writeUTF(descriptor);
+
+            final byte[] encoded = bytes.toByteArray();
+            final byte[] utf8 = new byte[encoded.length - 2];
+            System.arraycopy(encoded, 2, utf8, 0, utf8.length);
+            return utf8;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid descriptor " + descriptor, e);
+        }
+    }
+}
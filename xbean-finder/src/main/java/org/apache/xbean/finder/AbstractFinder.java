@@ -31,8 +31,10 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.xbean.asm6.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.util.SingleLinkedList;
@@ -291,7 +293,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
 
     public List<Method> findAnnotatedMethods(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
-        List<ClassInfo> seen = new ArrayList<ClassInfo>();
+        Set<ClassInfo> seen = new HashSet<ClassInfo>();
         List<Method> methods = new ArrayList<Method>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -299,9 +301,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
                 MethodInfo methodInfo = (MethodInfo) info;
                 ClassInfo classInfo = methodInfo.getDeclaringClass();
 
-                if (seen.contains(classInfo)) continue;
-
-                seen.add(classInfo);
+                if (!seen.add(classInfo)) continue;
 
                 try {
                     Class clazz = classInfo.get();
@@ -329,7 +329,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
 
     public List<Constructor> findAnnotatedConstructors(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
-        List<ClassInfo> seen = new ArrayList<ClassInfo>();
+        Set<ClassInfo> seen = new HashSet<ClassInfo>();
         List<Constructor> constructors = new ArrayList<Constructor>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -337,9 +337,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
                 MethodInfo methodInfo = (MethodInfo) info;
                 ClassInfo classInfo = methodInfo.getDeclaringClass();
 
-                if (seen.contains(classInfo)) continue;
-
-                seen.add(classInfo);
+                if (!seen.add(classInfo)) continue;
 
                 try {
                     Class clazz = classInfo.get();
@@ -358,7 +356,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
 
     public List<Field> findAnnotatedFields(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
-        List<ClassInfo> seen = new ArrayList<ClassInfo>();
+        Set<ClassInfo> seen = new HashSet<ClassInfo>();
         List<Field> fields = new ArrayList<Field>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -366,9 +364,7 @@ public abstract class AbstractFinder implements IAnnotationFinder {
                 FieldInfo fieldInfo = (FieldInfo) info;
                 ClassInfo classInfo = fieldInfo.getDeclaringClass();
 
-                if (seen.contains(classInfo)) continue;
-
-                seen.add(classInfo);
+                if (!seen.add(classInfo)) continue;
 
                 try {
                     Class clazz = classInfo.get();
@@ -385,6 +381,25 @@ public abstract class AbstractFinder implements IAnnotationFinder {
         return fields;
     }
 
+    /**
+     * The finder resolves everything up front, these just iterate over the full results.
+     */
+    public Iterable<Class<?>> streamAnnotatedClasses(Class<? extends Annotation> annotation) {
+        return findAnnotatedClasses(annotation);
+    }
+
+    public Iterable<Method> streamAnnotatedMethods(Class<? extends Annotation> annotation) {
+        return findAnnotatedMethods(annotation);
+    }
+
+    public Iterable<Constructor> streamAnnotatedConstructors(Class<? extends Annotation> annotation) {
+        return findAnnotatedConstructors(annotation);
+    }
+
+    public Iterable<Field> streamAnnotatedFields(Class<? extends Annotation> annotation) {
+        return findAnnotatedFields(annotation);
+    }
+
     public List<Annotated<Field>> findMetaAnnotatedFields(Class<? extends Annotation> annotation) {
         List<Field> fields = findAnnotatedFields(annotation);
         List<Annotated<Field>> list = new ArrayList<Annotated<Field>>();
@@ -20,20 +20,32 @@
 
 package org.apache.xbean.finder;
 
+import org.apache.xbean.asm6.original.commons.ConstantPoolScanner;
 import org.apache.xbean.asm6.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.BufferedEntry;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
 import org.apache.xbean.finder.util.Classes;
 import org.apache.xbean.finder.util.SingleLinkedList;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.signature.SignatureVisitor;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
@@ -46,14 +58,28 @@ import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ClassFinder searches the classpath of the specified classloader for
@@ -62,12 +88,23 @@ import java.util.Set;
  * For security reasons ASM is used to find the annotations.  Classes are not
  * loaded unless they match the requirements of a called findAnnotated* method.
  * Once loaded, these classes are cached.
+ * <p/>
+ * Once linked (see {@link #link()}), a finder can be shared and queried by several threads,
+ * the linking phases themselves are serialized. An incremental finder can't be queried while
+ * it is refreshed (see {@link #refresh()}).
+ * <p/>
+ * A linked finder can also be the base layer of other finders, see
+ * {@link #AnnotationFinder(AnnotationFinder, Archive, boolean, ScanOptions)}: the libraries
+ * shared by several applications are then only scanned and indexed once.
  *
  * @version $Rev$ $Date$
  */
 public class AnnotationFinder implements IAnnotationFinder {
     private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
 
+    // scratch buffer the BufferedEntry are read into, one per scanning thread
+    private static final ThreadLocal<byte[]> BYTECODE = new ThreadLocal<byte[]>();
+
     // this flag is just a backdoor to allow workaround in case we impact an application, if we aresafe for 2-3 versions
     // let remove it
     //
@@ -77,51 +114,136 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private final Set<Class<? extends Annotation>> metaroots = new HashSet<Class<? extends Annotation>>();
 
-    protected final Map<String, List<Info>> annotated = newAnnotatedMap();
+    protected final Map<String, List<Info>> annotated;
 
-    protected final Map<String, ClassInfo> classInfos = newClassInfoMap();
-    protected final Map<String, ClassInfo> originalInfos = newClassInfoMap();
-    private final List<String> classesNotLoaded = new LinkedList<String>();
+    protected final Map<String, ClassInfo> classInfos;
+    protected final Map<String, ClassInfo> originalInfos;
+
+    // the shared layer, never modified by this finder, and the infos of this layer only
+    private final AnnotationFinder base;
+    private final Map<String, List<Info>> localAnnotated;
+    private final Map<String, ClassInfo> localClassInfos;
+    // the classes of this layer extending a class of the base, its infos aren't linked to them
+    private final Map<ClassInfo, List<ClassInfo>> baseSubclasses = new HashMap<ClassInfo, List<ClassInfo>>();
+    // each thread sees the classes not loaded by its own last query
+    private final ThreadLocal<List<String>> classesNotLoaded = new ThreadLocal<List<String>>() {
+        @Override
+        protected List<String> initialValue() {
+            return new LinkedList<String>();
+        }
+    };
     private final Archive archive;
     private final boolean checkRuntimeAnnotation;
+    private final ScanProfile profile;
+    private final Executor executor;
+    // read again the changed classes of an incremental scan
+    private final ScanOptions options;
     private volatile boolean linking;
 
+    // serializes the linking phases, they are the only writers once the archive is read
+    private final Object linkLock = new Object();
+    // the linking phases run so far, run again for the classes of a refresh
+    private boolean linkedSubclasses;
+    private boolean linkedImplementations;
+    private boolean linkedMetaAnnotations;
+    // the class files of the incremental directories as they were when last read
+    private final Map<FileArchive, Map<String, ClassFile>> classFiles = new LinkedHashMap<FileArchive, Map<String, ClassFile>>();
+    // supertypes the archive can't provide, only known while linking
+    private Set<String> unresolved;
+
+    // reverse indexes of the class hierarchy, rebuilt when classes were added since the last build
+    private volatile Map<String, List<ClassInfo>> implementors;
+    private volatile Map<String, List<ClassInfo>> subclasses;
+    private int indexedClasses = -1;
+    // class ids and bitsets of the composite queries
+    private ClassIndex classIndex;
+
+    // the classInfos by package, sorted so a package and its sub packages are a range of keys
+    private final SortedMap<String, List<ClassInfo>> packages = new TreeMap<String, List<ClassInfo>>();
+    private int packagedClasses;
+
+    // memoised meta-annotation closures, rebuilt when the infos change
+    private MetaAnnotationGraph metaAnnotationGraph;
+
+    private final Map<String, Boolean> runtimeAnnotations = new ConcurrentHashMap<String, Boolean>();
+
+    // shares the strings of the infos while the archive is read
+    private volatile SymbolTable symbols;
+    // the entries read ahead of their indexing by a pipelined scan, only while the archive is read
+    private ScanPipeline pipeline;
+
+    /**
+     * A view of the parent restricted to the given classes, the annotations they use
+     * and the meta-annotations. The infos and the annotation lists of the parent are
+     * shared, the lists are filtered when they are read.
+     */
     private AnnotationFinder(AnnotationFinder parent, Iterable<String> classNames) {
+        this.base = null;
         this.archive = new SubArchive(classNames);
         this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
+        this.profile = parent.profile;
+        this.executor = parent.executor;
+        this.options = parent.options;
         this.metaroots.addAll(parent.metaroots);
 
+        final Map<String, ClassInfo> selected = newClassInfoMap();
+        final Set<String> annotations = new HashSet<String>();
+
+        final LinkedList<String> todo = new LinkedList<String>();
         for (Class<? extends Annotation> metaroot : metaroots) {
-            final ClassInfo info = parent.classInfos.get(metaroot.getName());
-            if (info == null) continue;
-            readClassDef(info);
+            todo.add(metaroot.getName());
         }
         for (String name : classNames) {
+            todo.add(name);
+        }
+        while (!todo.isEmpty()) {
+            final String name = todo.removeFirst();
+            if (selected.containsKey(name)) continue;
+
             final ClassInfo info = parent.classInfos.get(name);
             if (info == null) continue;
-            readClassDef(info);
-        }
+            selected.put(name, info);
 
-        resolveAnnotations(parent, new LinkedList<String>());
-        for (ClassInfo classInfo : classInfos.values()) {
-            if (isMetaRoot(classInfo)) {
-                try {
-                    metaroots.add((Class<? extends Annotation>) classInfo.get());
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+            // the annotations used by the class are selected too, with the meta-annotations they stand for
+            for (String annotation : annotationNames(info)) {
+                if (annotations.add(annotation)) {
+                    todo.add(annotation);
+                    todo.add(annotation + "$$");
                 }
             }
         }
 
-        for (Class<? extends Annotation> metaroot : metaroots) {
-            List<Info> infoList = annotated.get(metaroot.getName());
-            for (Info info : infoList) {
-                final String className = info.getName() + "$$";
-                final ClassInfo i = parent.classInfos.get(className);
-                if (i == null) continue;
-                readClassDef(i);
+        this.classInfos = this.localClassInfos = selected;
+        this.originalInfos = newClassInfoMap();
+        this.localAnnotated = newAnnotatedMap();
+        this.annotated = LayeredMap.ofLists(localAnnotated, new SelectedInfos(parent.annotated, selected.keySet(), annotations));
+    }
+
+    private static Set<String> annotationNames(ClassInfo info) {
+        final Set<String> names = new HashSet<String>();
+        addAnnotationNames(names, info);
+        for (MethodInfo ctor : info.constructors) {
+            addAnnotationNames(names, ctor);
+            for (ParameterInfo parameter : ctor.parameters) {
+                addAnnotationNames(names, parameter);
+            }
+        }
+        for (MethodInfo method : info.methods) {
+            addAnnotationNames(names, method);
+            for (ParameterInfo parameter : method.parameters) {
+                addAnnotationNames(names, parameter);
             }
         }
+        for (FieldInfo field : info.fields) {
+            addAnnotationNames(names, field);
+        }
+        return names;
+    }
+
+    private static void addAnnotationNames(Set<String> names, Info info) {
+        for (AnnotationInfo annotation : info.getAnnotations()) {
+            names.add(annotation.getName());
+        }
     }
 
     protected Map<String, List<Info>> newAnnotatedMap() {
@@ -138,63 +260,708 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
      */
     public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        this(archive, checkRuntimeAnnotation, new ScanOptions());
+    }
+
+    /**
+     * Parses the archive entries concurrently on the given executor.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor runs the parsing tasks, the calling thread still indexes the results
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor) {
+        this(archive, checkRuntimeAnnotation, new ScanOptions().executor(executor));
+    }
+
+    /**
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param options how the archive is scanned
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, ScanOptions options) {
+        this(null, archive, checkRuntimeAnnotation, options);
+    }
+
+    public AnnotationFinder(Archive archive) {
+        this(archive, true);
+    }
+
+    public AnnotationFinder(AnnotationFinder base, Archive archive) {
+        this(base, archive, true, new ScanOptions());
+    }
+
+    /**
+     * Scans the archive as a layer on top of the base finder. The queries see the classes
+     * of both layers, the infos of the base are used in place, they are neither copied nor
+     * modified so the same base can be shared by the finders of several applications.
+     * <p/>
+     * The base is expected to be linked before it is shared, this finder only links its own classes.
+     *
+     * @param base the linked finder of the shared archives, can be null
+     * @param archive the archive of this layer
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param options how the archive is scanned
+     */
+    public AnnotationFinder(AnnotationFinder base, Archive archive, boolean checkRuntimeAnnotation, ScanOptions options) {
+        this.base = base;
+        if (base == null) {
+            this.annotated = this.localAnnotated = newAnnotatedMap();
+            this.classInfos = this.localClassInfos = newClassInfoMap();
+            this.originalInfos = newClassInfoMap();
+        } else {
+            this.localAnnotated = newAnnotatedMap();
+            this.localClassInfos = newClassInfoMap();
+            this.annotated = LayeredMap.ofLists(localAnnotated, base.annotated);
+            this.classInfos = new LayeredMap<ClassInfo>(localClassInfos, base.classInfos);
+            this.originalInfos = new LayeredMap<ClassInfo>(newClassInfoMap(), base.originalInfos);
+            this.metaroots.addAll(base.metaroots);
+        }
         this.archive = archive;
         this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+        this.profile = options.getProfile();
+        this.executor = options.getExecutor();
+        this.options = options;
+
+        symbols = new SymbolTable();
+        if (options.isPipelined()) {
+            pipeline = new ScanPipeline(options);
+        }
+        try {
+            readArchive(archive, options);
+            if (pipeline != null) {
+                pipeline.drain();
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.cancel();
+                pipeline = null;
+            }
+            symbols = null;
+        }
+
+        // keep track of what was originally from the archives
+        originalInfos.putAll(localClassInfos);
+    }
+
+    /**
+     * @return the base layer of this finder, null if it has none
+     */
+    public AnnotationFinder getBase() {
+        return base;
+    }
+
+    /**
+     * A {@link org.apache.xbean.finder.archive.FilteredArchive} isn't descended, its filter would have
+     * to be applied to the cached or indexed infos: it is scanned like any other archive.
+     */
+    private void readArchive(Archive archive, ScanOptions options) {
+        if (archive instanceof CompositeArchive) {
+            for (Archive child : ((CompositeArchive) archive).getArchives()) {
+                readArchive(child, options);
+            }
+            return;
+        }
+        if (archive instanceof IndexedArchive && options.isIncremental()
+                && ((IndexedArchive) archive).getArchive() instanceof FileArchive) {
+            // the class files are tracked, the directory itself is scanned
+            readArchive(((IndexedArchive) archive).getArchive(), options);
+            return;
+        }
+        if (archive instanceof IndexedArchive && !options.isComplete()) {
+            // the index holds all the infos, a filtered scan reads the bytecode instead
+            readArchive(((IndexedArchive) archive).getArchive(), options);
+            return;
+        }
+        if (archive instanceof IndexedArchive) {
+            // the infos read ahead are indexed first so the archive order is kept
+            drainPipeline();
+            readIndexedArchive((IndexedArchive) archive, options);
+            return;
+        }
+        // a filtered scan only has partial infos, keep them out of the cache
+        final boolean cached = options.getCache() != null && options.isComplete();
+        if (cached && archive instanceof JarArchive) {
+            drainPipeline();
+            readCachedArchive(archive, ((JarArchive) archive).getFile(), options);
+            return;
+        }
+        if (cached && archive instanceof MappedJarArchive) {
+            drainPipeline();
+            readCachedArchive(archive, ((MappedJarArchive) archive).getFile(), options);
+            return;
+        }
+        if (options.isIncremental() && archive instanceof FileArchive) {
+            // before the classes are read so a later change is seen by refresh()
+            classFiles.put((FileArchive) archive, listClassFiles((FileArchive) archive));
+        }
+        readEntries(archive, options, null);
+    }
+
+    /**
+     * Publishes the infos of the build-time index, the archive is scanned if the index can't be read.
+     */
+    private void readIndexedArchive(IndexedArchive archive, ScanOptions options) {
+        List<Info> infos = null;
+        InputStream in = null;
+        try {
+            in = archive.openIndex();
+            infos = InfoCodec.read(this, new DataInputStream(new BufferedInputStream(in)));
+        } catch (IOException e) {
+            // an index from another version or a broken one, fallback on the bytecode
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // no-op
+                }
+            }
+        }
+
+        if (infos == null) {
+            readArchive(archive.getArchive(), options);
+            return;
+        }
+
+        for (Info info : infos) {
+            publish(info);
+        }
+    }
+
+    /**
+     * Reads the archive entries like the constructor does and returns the infos in the archive order.
+     *
+     * @throws IOException if an entry could not be read
+     */
+    List<Info> readInfos(Archive archive) throws IOException {
+        final ParsedInfos parsed = new ParsedInfos();
+        readEntries(archive, new ScanOptions(), parsed);
+        if (!parsed.complete) throw new IOException("Some classes of the archive could not be read");
+        return parsed;
+    }
 
+    /**
+     * Reads again the classes of the {@link FileArchive} directories scanned with
+     * {@link ScanOptions#incremental(boolean)} which were added, modified or deleted since they were read.
+     * <p/>
+     * The infos of the other classes are kept. The annotated lists, the subclass links and the
+     * package index are updated in place, the linking phases already run are run for the classes
+     * read again and for the subclasses of the replaced ones. The queries of other threads
+     * must therefore not run while the finder is refreshed.
+     * <p/>
+     * In a multi-release directory the class file of the running Java version is tracked
+     * along with the one of the directory.
+     *
+     * @return the names of the classes read again or removed
+     */
+    public List<String> refresh() {
+        synchronized (linkLock) {
+            final Set<String> removed = new LinkedHashSet<String>();
+            final Map<String, FileArchive> changed = new LinkedHashMap<String, FileArchive>();
+            for (Map.Entry<FileArchive, Map<String, ClassFile>> entry : classFiles.entrySet()) {
+                final FileArchive directory = entry.getKey();
+                final Map<String, ClassFile> files = entry.getValue();
+
+                directory.refresh();
+                final Map<String, ClassFile> current = listClassFiles(directory);
+                for (Map.Entry<String, ClassFile> file : current.entrySet()) {
+                    final ClassFile previous = files.get(file.getKey());
+                    if (previous == null || !previous.isSame(file.getValue())) {
+                        changed.put(file.getKey(), directory);
+                    }
+                }
+                for (String name : files.keySet()) {
+                    if (!current.containsKey(name)) {
+                        removed.add(name);
+                    }
+                }
+                entry.setValue(current);
+            }
+            if (removed.isEmpty() && changed.isEmpty()) return Collections.emptyList();
+
+            final List<ClassInfo> orphans = new ArrayList<ClassInfo>();
+            for (String name : removed) {
+                unpublish(name, orphans);
+            }
+            for (String name : changed.keySet()) {
+                unpublish(name, orphans);
+            }
+
+            final List<ClassInfo> read = new ArrayList<ClassInfo>();
+            symbols = new SymbolTable();
+            try {
+                for (Map.Entry<String, FileArchive> entry : changed.entrySet()) {
+                    final Info info = readClassFile(entry.getValue(), entry.getKey());
+                    publish(info);
+                    if (info instanceof ClassInfo) {
+                        originalInfos.put(info.getName(), (ClassInfo) info);
+                        read.add((ClassInfo) info);
+                    }
+                }
+            } finally {
+                symbols = null;
+            }
+
+            for (ClassInfo orphan : orphans) {
+                if (localClassInfos.get(orphan.name) == orphan) {
+                    read.add(orphan);
+                }
+            }
+            relink(read);
+
+            final List<String> names = new ArrayList<String>(removed);
+            names.addAll(changed.keySet());
+            return names;
+        }
+    }
+
+    private static Map<String, ClassFile> listClassFiles(FileArchive directory) {
+        final Map<String, ClassFile> files = new HashMap<String, ClassFile>();
+        for (Iterator<String> names = directory._iterator(); names.hasNext();) {
+            final String name = names.next();
+            files.put(name, new ClassFile(directory.getClassFiles(name)));
+        }
+        return files;
+    }
+
+    /**
+     * @return the info of the class file, null if it can't be read, it is then read again by the next refresh
+     */
+    private Info readClassFile(final FileArchive directory, final String name) {
+        final Archive.Entry entry = new Archive.Entry() {
+            public String getName() {
+                return name;
+            }
+
+            public InputStream getBytecode() throws IOException {
+                final File file = directory.getClassFile(name);
+                if (file != null) return new BufferedInputStream(new FileInputStream(file));
+                try {
+                    return directory.getBytecode(name);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        try {
+            return parseClassDef(entry, options.getScanner(), options.isStubs());
+        } catch (IOException e) {
+            e.printStackTrace();
+            classFiles.get(directory).remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the infos read from a class file, the reverse of {@link #publish(Info)}.
+     *
+     * @param orphans collects the subclasses which were linked to the removed class
+     */
+    private void unpublish(String name, List<ClassInfo> orphans) {
+        if (name.endsWith("package-info")) {
+            // equal to the PackageInfo read from the class file
+            final PackageInfo packageInfo = new PackageInfo(name);
+            for (List<Info> infos : localAnnotated.values()) {
+                while (infos.remove(packageInfo)) {
+                    // all the occurrences
+                }
+            }
+            return;
+        }
+
+        final ClassInfo classInfo = localClassInfos.get(name);
+        if (classInfo == null) return;
+
+        classInfos.remove(name);
+        if (originalInfos.get(name) == classInfo) {
+            originalInfos.remove(name);
+        }
+        final List<ClassInfo> packageInfos = packages.get(classInfo.getPackageName());
+        if (packageInfos != null && packageInfos.remove(classInfo)) {
+            packagedClasses--;
+        }
+        runtimeAnnotations.remove(name);
+
+        unindex(classInfo);
+        for (FieldInfo field : classInfo.fields) {
+            unindex(field);
+        }
+        for (MethodInfo method : classInfo.methods) {
+            unindex(method);
+            for (ParameterInfo parameter : method.parameters) {
+                unindex(parameter);
+            }
+        }
+
+        final ClassInfo parentInfo = classInfo.superclassInfo;
+        if (parentInfo != null) {
+            final List<ClassInfo> subclassInfos;
+            if (localClassInfos.get(parentInfo.name) == parentInfo) {
+                subclassInfos = parentInfo.subclassInfos;
+            } else {
+                synchronized (baseSubclasses) {
+                    subclassInfos = baseSubclasses.get(parentInfo);
+                }
+            }
+            if (subclassInfos != null) {
+                synchronized (subclassInfos) {
+                    subclassInfos.remove(classInfo);
+                }
+            }
+        }
+        for (ClassInfo subclassInfo : classInfo.subclassInfos) {
+            if (subclassInfo.superclassInfo == classInfo) {
+                subclassInfo.superclassInfo = null;
+                orphans.add(subclassInfo);
+            }
+        }
+    }
+
+    private void unindex(Info info) {
+        for (AnnotationInfo annotationInfo : info.getAnnotations()) {
+            final List<Info> infos = localAnnotated.get(annotationInfo.getName());
+            if (infos != null) {
+                infos.remove(info);
+            }
+        }
+    }
+
+    /**
+     * Runs the linking phases already run for the given classes, the derived indexes are rebuilt by the next query.
+     */
+    private void relink(List<ClassInfo> infos) {
+        if (linkedSubclasses) {
+            final boolean originalLinking = linking;
+            linking = ALLOW_LAZY_LINKING;
+            for (ClassInfo classInfo : infos) {
+                linkParent(classInfo);
+            }
+            linking = originalLinking;
+        }
+        if (linkedImplementations) {
+            for (ClassInfo classInfo : infos) {
+                linkInterfaces(classInfo);
+            }
+        }
+        if (linkedMetaAnnotations) {
+            resolveAnnotations();
+            linkMetaAnnotations();
+        }
+
+        // a refresh can keep the number of classes, the size checks would miss it
+        indexedClasses = -1;
+        classIndex = null;
+        metaAnnotationGraph = null;
+        if (linkedSubclasses || linkedImplementations) {
+            indexHierarchy();
+        }
+    }
+
+    private void readCachedArchive(Archive archive, File jar, ScanOptions options) {
+        final ScanCache cache = options.getCache();
+
+        final ScanCache.Fingerprint fingerprint;
+        try {
+            fingerprint = cache.fingerprint(jar);
+        } catch (IOException e) {
+            readEntries(archive, options, null);
+            return;
+        }
+
+        final List<Info> cached = cache.load(this, fingerprint);
+        if (cached != null) {
+            for (Info info : cached) {
+                publish(info);
+            }
+            return;
+        }
+
+        final ParsedInfos parsed = new ParsedInfos();
+        readEntries(archive, options, parsed);
+        if (parsed.complete) {
+            cache.store(fingerprint, parsed);
+        }
+    }
+
+    /**
+     * @param parsed if not null collects the infos read from the archive
+     */
+    private void readEntries(Archive archive, ScanOptions options, ParsedInfos parsed) {
+        if (pipeline != null) {
+            pipeline.add(archive, parsed);
+            if (parsed != null) {
+                // the caller needs all the infos of this archive
+                pipeline.drain();
+            }
+            return;
+        }
+        if (options.isParallel()) {
+            readClassDefs(archive, options, parsed);
+            return;
+        }
+
+        final ConstantPoolScanner scanner = options.getScanner();
         for (Archive.Entry entry : archive) {
             final String className = entry.getName();
             try {
-                readClassDef(entry.getBytecode());
+                if (parsed == null && scanner == null && entry instanceof BufferedEntry) {
+                    read((BufferedEntry) entry).accept(new InfoBuildingVisitor(), ASM_FLAGS);
+                } else if (parsed == null && scanner == null) {
+                    readClassDef(entry.getBytecode());
+                } else {
+                    final Info info = parseClassDef(entry, scanner, options.isStubs());
+                    if (info != null) {
+                        publish(info);
+                        if (parsed != null) {
+                            parsed.add(info);
+                        }
+                    }
+                }
             } catch (NoClassDefFoundError e) {
                 throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
             } catch (IOException e) {
                 e.printStackTrace();
+                if (parsed != null) {
+                    parsed.complete = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the entries on the executor while keeping at most <code>window</code> of them in flight.
+     * The parsed infos are indexed here, in the archive order, so the maps end up exactly
+     * as if the archive had been read sequentially.
+     */
+    private void readClassDefs(Archive archive, ScanOptions options, ParsedInfos parsed) {
+        final LinkedList<ParseTask> pending = new LinkedList<ParseTask>();
+        try {
+            for (Archive.Entry entry : archive) {
+                final ParseTask task = new ParseTask(entry, options.getScanner(), options.isStubs(), parsed);
+                options.getExecutor().execute(task);
+                pending.add(task);
+
+                if (pending.size() >= options.getWindow()) {
+                    pending.removeFirst().index();
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                pending.removeFirst().index();
+            }
+        } finally {
+            for (ParseTask task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The sizes and modification times of the files of a class, a missing file is 0 and 0.
+     */
+    private static final class ClassFile {
+        private final long[] stamps;
+
+        private ClassFile(List<File> files) {
+            this.stamps = new long[2 * files.size()];
+            int i = 0;
+            for (File file : files) {
+                stamps[i++] = file.lastModified();
+                stamps[i++] = file.length();
+            }
+        }
+
+        private boolean isSame(ClassFile file) {
+            return Arrays.equals(stamps, file.stamps);
+        }
+    }
+
+    private static class ParsedInfos extends ArrayList<Info> {
+        private boolean complete = true;
+    }
+
+    private class ParseTask extends FutureTask<Info> {
+        private final String className;
+        private final ParsedInfos parsed;
+
+        private ParseTask(final Archive.Entry entry, final ConstantPoolScanner scanner, final boolean stubs, ParsedInfos parsed) {
+            this(entry.getName(), new Callable<Info>() {
+                public Info call() throws Exception {
+                    return parseClassDef(entry, scanner, stubs);
+                }
+            }, parsed);
+        }
+
+        private ParseTask(String className, Callable<Info> parse, ParsedInfos parsed) {
+            super(parse);
+            this.className = className;
+            this.parsed = parsed;
+        }
+
+        private void index() {
+            try {
+                final Info info = get();
+                if (info == null) return;
+
+                publish(info);
+                if (parsed != null) {
+                    parsed.add(info);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scanning " + className, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof NoClassDefFoundError) {
+                    throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + cause.getMessage());
+                } else if (cause instanceof IOException) {
+                    cause.printStackTrace();
+                    if (parsed != null) {
+                        parsed.complete = false;
+                    }
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new IllegalStateException("Could not read class: " + className, cause);
+                }
+            }
+        }
+    }
+
+    private void drainPipeline() {
+        if (pipeline != null) {
+            pipeline.drain();
+        }
+    }
+
+    /**
+     * Reads the entries on the readers, parses them on the executor, or right after the read
+     * without one, and indexes them on the calling thread in the archive order. The archives
+     * share the pipeline so the reads of an archive overlap the parsing of the previous one.
+     */
+    private class ScanPipeline {
+        private final ScanOptions options;
+        private final LinkedList<ParseTask> pending = new LinkedList<ParseTask>();
+        // bytecode read and not parsed yet
+        private final AtomicLong buffered = new AtomicLong();
+
+        private ScanPipeline(ScanOptions options) {
+            this.options = options;
+        }
+
+        private void add(Archive archive, ParsedInfos parsed) {
+            for (Archive.Entry entry : archive) {
+                while (pending.size() >= options.getWindow() || (!pending.isEmpty() && buffered.get() >= options.getReadAhead())) {
+                    pending.removeFirst().index();
+                }
+                add(entry, parsed);
+            }
+        }
+
+        private void add(final Archive.Entry entry, ParsedInfos parsed) {
+            final FutureTask<byte[]> read = new FutureTask<byte[]>(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    final int size = readBytecode(entry);
+                    final byte[] bytecode = new byte[size];
+                    System.arraycopy(BYTECODE.get(), 0, bytecode, 0, size);
+                    return bytecode;
+                }
+            });
+            final ParseTask parse = new PipelinedTask(entry.getName(), read, new Callable<Info>() {
+                public Info call() throws Exception {
+                    final byte[] bytecode;
+                    try {
+                        bytecode = read.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                        throw (Exception) e.getCause();
+                    }
+                    return parseClassDef(bytecode, bytecode.length, options.getScanner(), options.isStubs());
+                }
+            }, parsed);
+            pending.add(parse);
+
+            options.getReaders().execute(new Runnable() {
+                public void run() {
+                    // the scan failed, the caller may already have closed the archive
+                    if (parse.isCancelled()) return;
+
+                    read.run();
+                    final int size = size(read);
+                    buffered.addAndGet(size);
+                    final Runnable release = new Runnable() {
+                        public void run() {
+                            try {
+                                parse.run();
+                            } finally {
+                                buffered.addAndGet(-size);
+                            }
+                        }
+                    };
+                    if (options.isParallel()) {
+                        options.getExecutor().execute(release);
+                    } else {
+                        release.run();
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return the size of the bytecode read, 0 if it could not be read
+         */
+        private int size(FutureTask<byte[]> read) {
+            if (read.isCancelled()) return 0;
+            try {
+                return read.get().length;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            } catch (ExecutionException e) {
+                return 0;
             }
         }
 
-        // keep track of what was originally from the archives
-        originalInfos.putAll(classInfos);
-    }
-
-    public AnnotationFinder(Archive archive) {
-        this(archive, true);
-    }
-
-    public boolean hasMetaAnnotations() {
-        return metaroots.size() > 0;
-    }
-
-    private void readClassDef(ClassInfo info) {
-        classInfos.put(info.getName(), info);
-        index(info);
-        index(info.constructors);
-        for (MethodInfo ctor : info.constructors) {
-            index(ctor.parameters);
+        private void drain() {
+            while (!pending.isEmpty()) {
+                pending.removeFirst().index();
+            }
         }
-        index(info.methods);
-        for (MethodInfo method : info.methods) {
-            index(method.parameters);
+
+        /**
+         * Cancels the reads not started yet along with the parsing.
+         */
+        private void cancel() {
+            for (ParseTask task : pending) {
+                task.cancel(true);
+            }
+            pending.clear();
         }
-        index(info.fields);
-    }
 
-    private void resolveAnnotations(AnnotationFinder parent, List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
+        private class PipelinedTask extends ParseTask {
+            private final FutureTask<byte[]> read;
 
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
-            final ClassInfo info = parent.classInfos.get(annotation);
-            if (info == null) continue;
-            readClassDef(info);
-        }
+            private PipelinedTask(String className, FutureTask<byte[]> read, Callable<Info> parse, ParsedInfos parsed) {
+                super(className, parse, parsed);
+                this.read = read;
+            }
 
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(parent, annotations);
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                read.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
         }
     }
 
+    public boolean hasMetaAnnotations() {
+        return metaroots.size() > 0;
+    }
 
     private void index(List<? extends Info> infos) {
         for (Info i : infos) {
@@ -223,68 +990,314 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @throws java.io.IOException
      */
     public AnnotationFinder link() {
+        synchronized (linkLock) {
 
-        enableFindSubclasses();
+            enableFindSubclasses();
 
-        enableFindImplementations();
+            enableFindImplementations();
 
-        enableMetaAnnotations();
+            enableMetaAnnotations();
 
+        }
         return this;
     }
 
     public AnnotationFinder enableMetaAnnotations() {
-        // diff new and old lists
-        resolveAnnotations(new LinkedList<String>());
+        synchronized (linkLock) {
+            // diff new and old lists
+            resolveAnnotations();
 
-        linkMetaAnnotations();
+            linkMetaAnnotations();
 
+            metaAnnotationGraph = new MetaAnnotationGraph();
+            linkedMetaAnnotations = true;
+        }
         return this;
     }
 
     public AnnotationFinder enableFindImplementations() {
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+        synchronized (linkLock) {
+            readSupertypes(true);
+            for (ClassInfo classInfo : localClassInfos.values().toArray(new ClassInfo[localClassInfos.size()])) {
 
-            linkInterfaces(classInfo);
+                linkInterfaces(classInfo);
 
+            }
+            unresolved = null;
+            indexHierarchy();
+            linkedImplementations = true;
         }
         return this;
     }
 
     public AnnotationFinder enableFindSubclasses() {
-        final boolean originalLinking = linking;
-        linking = ALLOW_LAZY_LINKING;
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+        synchronized (linkLock) {
+            readSupertypes(false);
+            final boolean originalLinking = linking;
+            linking = ALLOW_LAZY_LINKING;
+            for (ClassInfo classInfo : localClassInfos.values().toArray(new ClassInfo[localClassInfos.size()])) {
 
-            linkParent(classInfo);
+                linkParent(classInfo);
+            }
+            linking = originalLinking;
+            unresolved = null;
+            indexHierarchy();
+            linkedSubclasses = true;
         }
-        linking = originalLinking;
         return this;
     }
 
+    /**
+     * Reads the missing parents, or interfaces, of the known classes before they are linked.
+     * They are read round after round, a round reads the supertypes missing after the previous one
+     * on the executor when there is one, so the linking mostly finds them in classInfos.
+     * The names the archive can't provide are kept in unresolved for the rest of the linking phase.
+     */
+    private void readSupertypes(boolean interfaces) {
+        unresolved = new HashSet<String>();
+
+        Collection<ClassInfo> infos = new ArrayList<ClassInfo>(localClassInfos.values());
+        while (!infos.isEmpty()) {
+            final Set<String> missing = new LinkedHashSet<String>();
+            for (ClassInfo info : infos) {
+                if (info.clazz != null) continue; // linked with reflection
+
+                if (interfaces) {
+                    for (String name : info.interfaces) {
+                        addMissing(missing, name);
+                    }
+                } else {
+                    addMissing(missing, info.superType);
+                }
+            }
+
+            infos = readSupertypes(missing);
+        }
+    }
+
+    /**
+     * @return true if a subclass overrides {@link #readClassDef(String)} or {@link #readClassDef(InputStream)},
+     * the batches would bypass it
+     */
+    private boolean overridesReadClassDef() {
+        for (Class<?> clazz = getClass(); clazz != AnnotationFinder.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (!method.getName().equals("readClassDef") || method.getParameterTypes().length != 1) continue;
+
+                final Class<?> type = method.getParameterTypes()[0];
+                if (type == String.class || type == InputStream.class) return true;
+            }
+        }
+        return false;
+    }
+
+    private void addMissing(Set<String> missing, String name) {
+        if (name != null && !isJvm(name) && !classInfos.containsKey(name) && !unresolved.contains(name)) {
+            missing.add(name);
+        }
+    }
+
+    /**
+     * @return the infos of the classes read
+     */
+    private List<ClassInfo> readSupertypes(Collection<String> names) {
+        final List<ClassInfo> read = new ArrayList<ClassInfo>(names.size());
+        if (names.isEmpty()) return read;
+
+        if (overridesReadClassDef()) {
+            // the subclass reads the classes itself, one by one
+            for (String name : names) {
+                readClassDef(name);
+                final ClassInfo info = localClassInfos.get(name);
+                if (info != null) {
+                    read.add(info);
+                } else {
+                    unresolved.add(name);
+                }
+            }
+            return read;
+        }
+
+        final List<FutureTask<Info>> tasks = new ArrayList<FutureTask<Info>>(names.size());
+        for (final String name : names) {
+            final FutureTask<Info> task = new FutureTask<Info>(new Callable<Info>() {
+                public Info call() throws Exception {
+                    return parseClassDef(archive.getBytecode(name));
+                }
+            });
+            if (executor == null) {
+                task.run();
+            } else {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // the scan executor is usually shut down once the finder is built
+                    task.run();
+                }
+            }
+            tasks.add(task);
+        }
+
+        final Iterator<String> iterator = names.iterator();
+        for (FutureTask<Info> task : tasks) {
+            final String name = iterator.next();
+            try {
+                final Info info = task.get();
+                if (info instanceof ClassInfo) {
+                    publish(info);
+                    read.add((ClassInfo) info);
+                } else {
+                    unresolved.add(name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while linking " + name, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                unresolved.add(name);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Builds the interface to implementors and superclass to subclasses indexes
+     * used by findImplementations, unless they are up to date. A layer only indexes its own classes.
+     */
+    private void indexHierarchy() {
+        synchronized (linkLock) {
+            if (indexedClasses == localClassInfos.size()) return;
+
+            final Map<String, List<ClassInfo>> implementors = new HashMap<String, List<ClassInfo>>();
+            final Map<String, List<ClassInfo>> subclasses = new HashMap<String, List<ClassInfo>>();
+            for (ClassInfo classInfo : localClassInfos.values()) {
+                if (classInfo.superType != null) {
+                    put(subclasses, classInfo.superType, classInfo);
+                }
+                for (String interfce : classInfo.interfaces) {
+                    put(implementors, interfce, classInfo);
+                }
+            }
+
+            this.implementors = implementors;
+            this.subclasses = subclasses;
+            this.indexedClasses = localClassInfos.size();
+        }
+    }
+
+    private static void put(Map<String, List<ClassInfo>> index, String name, ClassInfo classInfo) {
+        List<ClassInfo> infos = index.get(name);
+        if (infos == null) {
+            infos = new ArrayList<ClassInfo>(2);
+            index.put(name, infos);
+        }
+        infos.add(classInfo);
+    }
+
+    private static List<ClassInfo> get(Map<String, List<ClassInfo>> index, String name) {
+        final List<ClassInfo> infos = index.get(name);
+        if (infos == null) return Collections.emptyList();
+        return infos;
+    }
+
+    /**
+     * @return the direct implementors of this layer then the ones of the base
+     */
+    private List<ClassInfo> implementorsOf(String name) {
+        if (base == null) return get(implementors, name);
+
+        base.indexHierarchy();
+        return concat(get(implementors, name), get(base.implementors, name));
+    }
+
+    /**
+     * @return the direct subclasses of this layer then the ones of the base
+     */
+    private List<ClassInfo> subclassesOf(String name) {
+        if (base == null) return get(subclasses, name);
+
+        base.indexHierarchy();
+        return concat(get(subclasses, name), get(base.subclasses, name));
+    }
+
+    private static List<ClassInfo> concat(List<ClassInfo> infos, List<ClassInfo> baseInfos) {
+        if (baseInfos.isEmpty()) return infos;
+        if (infos.isEmpty()) return baseInfos;
+
+        final List<ClassInfo> all = new ArrayList<ClassInfo>(infos.size() + baseInfos.size());
+        all.addAll(infos);
+        all.addAll(baseInfos);
+        return all;
+    }
+
+    /**
+     * @return the index of the composite queries, rebuilt if classes or annotations were added since the last query
+     */
+    private ClassIndex classIndex() {
+        synchronized (linkLock) {
+            if (classIndex == null || !classIndex.isCurrent(classInfos.size(), annotated.size())) {
+                classIndex = new ClassIndex(classInfos.values(), annotated);
+            }
+            return classIndex;
+        }
+    }
+
+    /**
+     * Evaluates the query on the scanned infos, no class is loaded.
+     *
+     * @return the matching classes, in no particular order
+     */
+    public List<ClassInfo> findClassInfos(ClassQuery query) {
+        if (query == null) throw new NullPointerException("query cannot be null");
+
+        final ClassIndex index = classIndex();
+        final BitSet ids = query.evaluate(index);
+
+        final List<ClassInfo> infos = new ArrayList<ClassInfo>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            infos.add(index.get(id));
+        }
+        return infos;
+    }
+
+    /**
+     * Loads the classes matching the query, only these classes are loaded.
+     * The ones which can't be loaded are listed by {@link #getClassesNotLoaded()}.
+     *
+     * @return the matching classes, in no particular order
+     */
+    public List<Class<?>> findClasses(ClassQuery query) {
+        classesNotLoaded().clear();
+
+        final List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (ClassInfo classInfo : findClassInfos(query)) {
+            try {
+                classes.add(classInfo.get());
+            } catch (ClassNotFoundException e) {
+                classesNotLoaded().add(classInfo.getName());
+            }
+        }
+        return classes;
+    }
+
     /**
      * Used to support meta annotations
      * <p/>
      * Once the list of classes has been read from the Archive, we
      * iterate over all the annotations that are used by those classes
-     * and recursively resolve any annotations those annotations use.
-     *
-     * @param scanned
-     * @throws ClassNotFoundException
-     * @throws IOException
+     * and resolve any annotations those annotations use, until no new
+     * annotation shows up.
      */
-    private void resolveAnnotations(List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
-
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
-            readClassDef(annotation);
-        }
+    private void resolveAnnotations() {
+        final Set<String> scanned = new HashSet<String>();
 
         // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(annotations);
+        while (scanned.size() != annotated.size()) {
+            for (String annotation : new ArrayList<String>(annotated.keySet())) {
+                if (scanned.add(annotation)) {
+                    readClassDef(annotation);
+                }
+            }
         }
 
 
@@ -302,12 +1315,12 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     private void linkMetaAnnotations() {
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+        for (ClassInfo classInfo : localClassInfos.values().toArray(new ClassInfo[localClassInfos.size()])) {
             if (isMetaRoot(classInfo)) {
                 try {
                     metaroots.add((Class<? extends Annotation>) classInfo.get());
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             }
         }
@@ -372,7 +1385,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
                 if (parentInfo == null) {
                     // parentInfo == null means readClassDef fails so clean up error and retry
-                    classesNotLoaded.remove(classInfo.superType);
+                    classesNotLoaded().remove(classInfo.superType);
 
                     try {
                         if (classInfo.get() != null) { // call get() to ensure clazz got a change to be loaded
@@ -394,9 +1407,24 @@ public class AnnotationFinder implements IAnnotationFinder {
             classInfo.superclassInfo = parentInfo;
         }
 
-        synchronized (parentInfo.subclassInfos) {
-            if (!parentInfo.subclassInfos.contains(classInfo)) {
-                parentInfo.subclassInfos.add(classInfo);
+        final List<ClassInfo> subclassInfos;
+        if (localClassInfos.get(parentInfo.name) == parentInfo) {
+            subclassInfos = parentInfo.subclassInfos;
+        } else {
+            // a class of the base layer, keep the link in this layer
+            synchronized (baseSubclasses) {
+                List<ClassInfo> infos = baseSubclasses.get(parentInfo);
+                if (infos == null) {
+                    infos = new SingleLinkedList<ClassInfo>();
+                    baseSubclasses.put(parentInfo, infos);
+                }
+                subclassInfos = infos;
+            }
+        }
+
+        synchronized (subclassInfos) {
+            if (!subclassInfos.contains(classInfo)) {
+                subclassInfos.add(classInfo);
             }
         }
     }
@@ -478,16 +1506,21 @@ public class AnnotationFinder implements IAnnotationFinder {
      * The list returned is unmodifiable.  Once obtained, the returned list will be a live view of the
      * results from the last findAnnotated* method call.
      * <p/>
-     * This method is not thread safe.
+     * The list is kept per thread, it reports the last findAnnotated* call of the calling thread
+     * so several threads can query the same finder.
      *
      * @return an unmodifiable live view of classes that could not be loaded in previous findAnnotated* call.
      */
     public List<String> getClassesNotLoaded() {
-        return Collections.unmodifiableList(classesNotLoaded);
+        return Collections.unmodifiableList(classesNotLoaded());
+    }
+
+    private List<String> classesNotLoaded() {
+        return classesNotLoaded.get();
     }
 
     public List<Package> findAnnotatedPackages(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         List<Package> packages = new LinkedList<Package>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -500,7 +1533,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                         packages.add(pkg);
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(packageInfo.getName());
+                    classesNotLoaded().add(packageInfo.getName());
                 }
             }
         }
@@ -508,28 +1541,40 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Class<?>> findAnnotatedClasses(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<Class<?>> classes = new LinkedList<Class<?>>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof ClassInfo) {
-                ClassInfo classInfo = (ClassInfo) info;
-                try {
-                    Class clazz = classInfo.get();
-                    // double check via proper reflection
-                    if (!checkRuntimeAnnotation || clazz.isAnnotationPresent(annotation)) {
-                        classes.add(clazz);
+        return list(streamAnnotatedClasses(annotation));
+    }
+
+    /**
+     * Lazy version of {@link #findAnnotatedClasses(Class)}, the classes are loaded as the iteration goes
+     * so a caller only interested in the first matches doesn't pay for the others.
+     * Each iteration starts with a cleared {@link #getClassesNotLoaded()}.
+     */
+    public Iterable<Class<?>> streamAnnotatedClasses(final Class<? extends Annotation> annotation) {
+        return new Iterable<Class<?>>() {
+            public Iterator<Class<?>> iterator() {
+                return new Resolver<Class<?>>(annotation) {
+                    @Override
+                    protected void resolve(Info info, List<Class<?>> found) {
+                        if (!(info instanceof ClassInfo)) return;
+
+                        final ClassInfo classInfo = (ClassInfo) info;
+                        try {
+                            Class clazz = classInfo.get();
+                            // double check via proper reflection
+                            if (!checkRuntimeAnnotation || clazz.isAnnotationPresent(annotation)) {
+                                found.add(clazz);
+                            }
+                        } catch (ClassNotFoundException e) {
+                            classesNotLoaded().add(classInfo.getName());
+                        }
                     }
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
-                }
+                };
             }
-        }
-        return classes;
+        };
     }
 
     public List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         Set<Class<?>> classes = findMetaAnnotatedClasses(annotation, new HashSet<Class<?>>());
 
         List<Annotated<Class<?>>> list = new LinkedList<Annotated<Class<?>>>();
@@ -576,30 +1621,162 @@ public class AnnotationFinder implements IAnnotationFinder {
 
 
     private Set<Class<?>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation, Set<Class<?>> classes) {
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof ClassInfo) {
-                ClassInfo classInfo = (ClassInfo) info;
-                try {
-                    Class clazz = classInfo.get();
+        final Map<String, String> closure = metaAnnotationGraph().classClosure(annotation.getName());
 
-                    if (classes.contains(clazz)) continue;
+        // a meta-annotated class is itself one of the classes of the previous annotation, it was reported there
+        for (Class<? extends Annotation> type : loadClosure(annotation, closure, false)) {
+            for (Info info : getAnnotationInfos(type.getName())) {
+                if (info instanceof ClassInfo) {
+                    ClassInfo classInfo = (ClassInfo) info;
+                    try {
+                        Class clazz = classInfo.get();
 
-                    // double check via proper reflection
-                    if (clazz.isAnnotationPresent(annotation)) {
-                        classes.add(clazz);
+                        // double check via proper reflection
+                        if (clazz.isAnnotationPresent(type)) {
+                            classes.add(clazz);
+                        }
+                    } catch (ClassNotFoundException e) {
+                        classesNotLoaded().add(classInfo.getName());
                     }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Loads the annotations of a closure, the ones reached through an annotation
+     * which can't be loaded are skipped.
+     *
+     * @return the loaded annotations, starting with the annotation of the query
+     */
+    private List<Class<? extends Annotation>> loadClosure(Class<? extends Annotation> annotation, Map<String, String> closure, boolean report) {
+        final List<Class<? extends Annotation>> types = new ArrayList<Class<? extends Annotation>>(closure.size());
+        types.add(annotation);
+
+        final Set<String> skipped = new HashSet<String>();
+        for (Map.Entry<String, String> entry : closure.entrySet()) {
+            final String name = entry.getKey();
+            final String reachedFrom = entry.getValue();
+            if (reachedFrom == null) continue; // the annotation itself
+
+            final ClassInfo info = classInfos.get(name);
+            if (info == null || skipped.contains(reachedFrom)) {
+                skipped.add(name);
+                continue;
+            }
+
+            try {
+                types.add((Class<? extends Annotation>) info.get());
+            } catch (ClassNotFoundException e) {
+                if (report) {
+                    classesNotLoaded().add(info.getName());
+                }
+                skipped.add(name);
+            }
+        }
+        return types;
+    }
+
+    private MetaAnnotationGraph metaAnnotationGraph() {
+        synchronized (linkLock) {
+            if (metaAnnotationGraph == null || !metaAnnotationGraph.isCurrent()) {
+                metaAnnotationGraph = new MetaAnnotationGraph();
+            }
+            return metaAnnotationGraph;
+        }
+    }
 
-                    String meta = info.getMetaAnnotationName();
-                    if (meta != null) {
-                        classes.addAll(findMetaAnnotatedClasses((Class<? extends Annotation>) clazz, classes));
+    /**
+     * The annotation to meta-annotation graph of the findMetaAnnotated* queries.
+     * <p/>
+     * An annotation leads to the meta-annotations it annotates and, for the class queries,
+     * to the meta-annotated classes it annotates. The transitive closure of an annotation
+     * is computed once, with a worklist, and kept until classes, annotations or metaroots are added.
+     */
+    private final class MetaAnnotationGraph {
+        private final int classes = classInfos.size();
+        private final int annotations = annotated.size();
+        private final int roots = metaroots.size();
+
+        // the infos standing for a meta-annotation rather than annotated with it
+        private final Set<Info> metaInfos = new HashSet<Info>();
+        private final Map<String, Set<String>> classEdges = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> memberEdges = new HashMap<String, Set<String>>();
+        private final Map<String, Map<String, String>> classClosures = new ConcurrentHashMap<String, Map<String, String>>();
+        private final Map<String, Map<String, String>> memberClosures = new ConcurrentHashMap<String, Map<String, String>>();
+
+        private MetaAnnotationGraph() {
+            for (Map.Entry<String, List<Info>> entry : annotated.entrySet()) {
+                final String annotation = entry.getKey();
+                for (Info info : entry.getValue()) {
+                    final String meta = info.getMetaAnnotationName();
+                    if (meta == null) continue;
+
+                    metaInfos.add(info);
+                    if (info instanceof ClassInfo) {
+                        edge(classEdges, annotation, info.getName());
+                    }
+                    if (!meta.equals(annotation)) {
+                        edge(memberEdges, annotation, meta);
                     }
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
                 }
             }
         }
-        return classes;
+
+        private boolean isCurrent() {
+            return classes == classInfos.size() && annotations == annotated.size() && roots == metaroots.size();
+        }
+
+        private boolean isMeta(Info info) {
+            return metaInfos.contains(info);
+        }
+
+        private Map<String, String> classClosure(String annotation) {
+            return closure(classEdges, classClosures, annotation);
+        }
+
+        private Map<String, String> memberClosure(String annotation) {
+            return closure(memberEdges, memberClosures, annotation);
+        }
+
+        /**
+         * @return the annotations reachable from this one, in the order they are reached,
+         * each with the annotation it was reached from
+         */
+        private Map<String, String> closure(Map<String, Set<String>> edges, Map<String, Map<String, String>> closures, String annotation) {
+            Map<String, String> closure = closures.get(annotation);
+            if (closure != null) return closure;
+
+            closure = new LinkedHashMap<String, String>();
+            closure.put(annotation, null);
+
+            final LinkedList<String> todo = new LinkedList<String>();
+            todo.add(annotation);
+            while (!todo.isEmpty()) {
+                final String name = todo.removeFirst();
+                final Set<String> metas = edges.get(name);
+                if (metas == null) continue;
+
+                for (String meta : metas) {
+                    if (closure.containsKey(meta)) continue;
+                    closure.put(meta, name);
+                    todo.add(meta);
+                }
+            }
+
+            closures.put(annotation, closure);
+            return closure;
+        }
+
+        private void edge(Map<String, Set<String>> edges, String from, String to) {
+            Set<String> targets = edges.get(from);
+            if (targets == null) {
+                targets = new LinkedHashSet<String>();
+                edges.put(from, targets);
+            }
+            targets.add(to);
+        }
     }
 
     /**
@@ -609,7 +1786,7 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @return list of directly or indirectly (inherited) annotated classes
      */
     public List<Class<?>> findInheritedAnnotatedClasses(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -651,9 +1828,9 @@ public class AnnotationFinder implements IAnnotationFinder {
                         }
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 } catch (NoClassDefFoundError e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             }
         } while (annClassFound);
@@ -661,48 +1838,54 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Method> findAnnotatedMethods(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<ClassInfo> seen = new LinkedList<ClassInfo>();
-        List<Method> methods = new LinkedList<Method>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof MethodInfo && !info.getName().equals("<init>")) {
-                final MethodInfo methodInfo = (MethodInfo) info;
-
-                if (checkRuntimeAnnotation) {
-                    final ClassInfo classInfo = methodInfo.getDeclaringClass();
-
-                    if (seen.contains(classInfo)) continue;
-
-                    seen.add(classInfo);
+        return list(streamAnnotatedMethods(annotation));
+    }
 
-                    try {
-                        Class clazz = classInfo.get();
-                        for (Method method : clazz.getDeclaredMethods()) {
-                            if (method.isAnnotationPresent(annotation)) {
-                                methods.add(method);
+    /**
+     * Lazy version of {@link #findAnnotatedMethods(Class)}, see {@link #streamAnnotatedClasses(Class)}.
+     */
+    public Iterable<Method> streamAnnotatedMethods(final Class<? extends Annotation> annotation) {
+        return new Iterable<Method>() {
+            public Iterator<Method> iterator() {
+                return new Resolver<Method>(annotation) {
+                    @Override
+                    protected void resolve(Info info, List<Method> found) {
+                        if (!(info instanceof MethodInfo) || info.getName().equals("<init>")) return;
+
+                        final MethodInfo methodInfo = (MethodInfo) info;
+
+                        if (checkRuntimeAnnotation) {
+                            final ClassInfo classInfo = methodInfo.getDeclaringClass();
+
+                            if (!seen(classInfo)) return;
+
+                            try {
+                                Class clazz = classInfo.get();
+                                for (Method method : clazz.getDeclaredMethods()) {
+                                    if (method.isAnnotationPresent(annotation)) {
+                                        found.add(method);
+                                    }
+                                }
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(classInfo.getName());
+                            } catch (ClassCircularityError cce) {
+                                classesNotLoaded().add(classInfo.getName());
+                            }
+                        } else {
+                            try {
+                                found.add((Method) methodInfo.get());
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(methodInfo.getDeclaringClass().getName());
                             }
                         }
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(classInfo.getName());
-                    } catch (ClassCircularityError cce) {
-                        classesNotLoaded.add(classInfo.getName());
-                    }
-                } else {
-                    try {
-                        final Method method = (Method) methodInfo.get();
-                        methods.add(method);
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(methodInfo.getDeclaringClass().getName());
                     }
-                }
+                };
             }
-        }
-        return methods;
+        };
     }
 
     public List<Parameter<Method>> findAnnotatedMethodParameters(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         
         final Set<ClassInfo> seen = checkRuntimeAnnotation ? new HashSet<ClassInfo>() : null;
         final List<Parameter<Method>> result = new LinkedList<Parameter<Method>>();
@@ -732,7 +1915,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                         }
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             } else {
                 try {
@@ -740,7 +1923,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                     final Parameter<Method> parameter = (Parameter<Method>) parameterInfo.get();
                     result.add(parameter);
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(parameterInfo.getDeclaringMethod().getDeclaringClass().getName());
+                    classesNotLoaded().add(parameterInfo.getDeclaringMethod().getDeclaringClass().getName());
                 }
             }
         }
@@ -748,9 +1931,9 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Annotated<Method>> findMetaAnnotatedMethods(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
 
-        Set<Method> methods = findMetaAnnotatedMethods(annotation, new HashSet<Method>(), new HashSet<String>());
+        Set<Method> methods = findMetaAnnotatedMethods(annotation, new HashSet<Method>());
 
         List<Annotated<Method>> targets = new LinkedList<Annotated<Method>>();
 
@@ -761,30 +1944,25 @@ public class AnnotationFinder implements IAnnotationFinder {
         return targets;
     }
 
-    private Set<Method> findMetaAnnotatedMethods(Class<? extends Annotation> annotation, Set<Method> methods, Set<String> seen) {
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-
-        for (Info info : infos) {
+    private Set<Method> findMetaAnnotatedMethods(Class<? extends Annotation> annotation, Set<Method> methods) {
+        final MetaAnnotationGraph graph = metaAnnotationGraph();
 
-            String meta = info.getMetaAnnotationName();
-            if (meta != null) {
-                if (meta.equals(annotation.getName())) continue;
-                if (!seen.add(meta)) continue;
+        for (Class<? extends Annotation> type : loadClosure(annotation, graph.memberClosure(annotation.getName()), true)) {
+            findMetaAnnotatedMethods(graph, type, methods);
+        }
 
+        return methods;
+    }
 
-                ClassInfo metaInfo = classInfos.get(meta);
+    private void findMetaAnnotatedMethods(MetaAnnotationGraph graph, Class<? extends Annotation> annotation, Set<Method> methods) {
+        List<Info> infos = getAnnotationInfos(annotation.getName());
 
-                Class<?> clazz;
-                try {
-                    clazz = metaInfo.get();
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(metaInfo.getName());
-                    continue;
-                }
+        for (Info info : infos) {
 
-                findMetaAnnotatedMethods((Class<? extends Annotation>) clazz, methods, seen);
+            // the meta-annotations are followed by the closure
+            if (graph.isMeta(info)) continue;
 
-            } else if (info instanceof MethodInfo && !((MethodInfo) info).isConstructor()) {
+            if (info instanceof MethodInfo && !((MethodInfo) info).isConstructor()) {
 
                 MethodInfo methodInfo = (MethodInfo) info;
 
@@ -798,20 +1976,18 @@ public class AnnotationFinder implements IAnnotationFinder {
                         }
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 } catch (NoClassDefFoundError ncdfe) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             }
         }
-
-        return methods;
     }
 
     public List<Annotated<Field>> findMetaAnnotatedFields(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
 
-        Set<Field> fields = findMetaAnnotatedFields(annotation, new HashSet<Field>(), new HashSet<String>());
+        Set<Field> fields = findMetaAnnotatedFields(annotation, new HashSet<Field>());
 
         List<Annotated<Field>> targets = new LinkedList<Annotated<Field>>();
 
@@ -822,30 +1998,25 @@ public class AnnotationFinder implements IAnnotationFinder {
         return targets;
     }
 
-    private Set<Field> findMetaAnnotatedFields(Class<? extends Annotation> annotation, Set<Field> fields, Set<String> seen) {
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-
-        for (Info info : infos) {
+    private Set<Field> findMetaAnnotatedFields(Class<? extends Annotation> annotation, Set<Field> fields) {
+        final MetaAnnotationGraph graph = metaAnnotationGraph();
 
-            String meta = info.getMetaAnnotationName();
-            if (meta != null) {
-                if (meta.equals(annotation.getName())) continue;
-                if (!seen.add(meta)) continue;
+        for (Class<? extends Annotation> type : loadClosure(annotation, graph.memberClosure(annotation.getName()), true)) {
+            findMetaAnnotatedFields(graph, type, fields);
+        }
 
+        return fields;
+    }
 
-                ClassInfo metaInfo = classInfos.get(meta);
+    private void findMetaAnnotatedFields(MetaAnnotationGraph graph, Class<? extends Annotation> annotation, Set<Field> fields) {
+        List<Info> infos = getAnnotationInfos(annotation.getName());
 
-                Class<?> clazz;
-                try {
-                    clazz = metaInfo.get();
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(metaInfo.getName());
-                    continue;
-                }
+        for (Info info : infos) {
 
-                findMetaAnnotatedFields((Class<? extends Annotation>) clazz, fields, seen);
+            // the meta-annotations are followed by the closure
+            if (graph.isMeta(info)) continue;
 
-            } else if (info instanceof FieldInfo) {
+            if (info instanceof FieldInfo) {
 
                 FieldInfo fieldInfo = (FieldInfo) info;
 
@@ -859,58 +2030,63 @@ public class AnnotationFinder implements IAnnotationFinder {
                         }
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 } catch (NoClassDefFoundError ncdfe) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             }
         }
-
-        return fields;
     }
 
     public List<Constructor> findAnnotatedConstructors(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<ClassInfo> seen = new LinkedList<ClassInfo>();
-        List<Constructor> constructors = new LinkedList<Constructor>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof MethodInfo && info.getName().equals("<init>")) {
-                MethodInfo methodInfo = (MethodInfo) info;
-
-                if (checkRuntimeAnnotation) {
-                    ClassInfo classInfo = methodInfo.getDeclaringClass();
-
-                    if (seen.contains(classInfo)) continue;
-
-                    seen.add(classInfo);
+        return list(streamAnnotatedConstructors(annotation));
+    }
 
-                    try {
-                        Class clazz = classInfo.get();
-                        for (Constructor constructor : clazz.getConstructors()) {
-                            if (constructor.isAnnotationPresent(annotation)) {
-                                constructors.add(constructor);
+    /**
+     * Lazy version of {@link #findAnnotatedConstructors(Class)}, see {@link #streamAnnotatedClasses(Class)}.
+     */
+    public Iterable<Constructor> streamAnnotatedConstructors(final Class<? extends Annotation> annotation) {
+        return new Iterable<Constructor>() {
+            public Iterator<Constructor> iterator() {
+                return new Resolver<Constructor>(annotation) {
+                    @Override
+                    protected void resolve(Info info, List<Constructor> found) {
+                        if (!(info instanceof MethodInfo) || !info.getName().equals("<init>")) return;
+
+                        final MethodInfo methodInfo = (MethodInfo) info;
+
+                        if (checkRuntimeAnnotation) {
+                            final ClassInfo classInfo = methodInfo.getDeclaringClass();
+
+                            if (!seen(classInfo)) return;
+
+                            try {
+                                Class clazz = classInfo.get();
+                                for (Constructor constructor : clazz.getConstructors()) {
+                                    if (constructor.isAnnotationPresent(annotation)) {
+                                        found.add(constructor);
+                                    }
+                                }
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(classInfo.getName());
+                            } catch (NoClassDefFoundError ncdfe) {
+                                classesNotLoaded().add(classInfo.getName());
+                            }
+                        } else {
+                            try {
+                                found.add((Constructor) methodInfo.get());
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(methodInfo.getDeclaringClass().getName());
                             }
                         }
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(classInfo.getName());
-                    } catch (NoClassDefFoundError ncdfe) {
-                        classesNotLoaded.add(classInfo.getName());
-                    }
-                } else {
-                    try {
-                        constructors.add((Constructor) methodInfo.get());
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(methodInfo.getDeclaringClass().getName());
                     }
-                }
+                };
             }
-        }
-        return constructors;
+        };
     }
 
     public List<Parameter<Constructor<?>>> findAnnotatedConstructorParameters(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         
         final Set<ClassInfo> seen = checkRuntimeAnnotation ? new HashSet<ClassInfo>() : null;
         final List<Parameter<Constructor<?>>> result = new LinkedList<Parameter<Constructor<?>>>();
@@ -942,7 +2118,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                         }
                     }
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
+                    classesNotLoaded().add(classInfo.getName());
                 }
             } else {
                 try {
@@ -950,7 +2126,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                     final Parameter<Constructor<?>> parameter = (Parameter<Constructor<?>>) parameterInfo.get();
                     result.add(parameter);
                 } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(parameterInfo.getDeclaringMethod().getDeclaringClass().getName());
+                    classesNotLoaded().add(parameterInfo.getDeclaringMethod().getDeclaringClass().getName());
                 }
             }
         }
@@ -958,66 +2134,282 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Field> findAnnotatedFields(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<ClassInfo> seen = new LinkedList<ClassInfo>();
-        List<Field> fields = new LinkedList<Field>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof FieldInfo) {
-                FieldInfo fieldInfo = (FieldInfo) info;
+        return list(streamAnnotatedFields(annotation));
+    }
+
+    /**
+     * Lazy version of {@link #findAnnotatedFields(Class)}, see {@link #streamAnnotatedClasses(Class)}.
+     */
+    public Iterable<Field> streamAnnotatedFields(final Class<? extends Annotation> annotation) {
+        return new Iterable<Field>() {
+            public Iterator<Field> iterator() {
+                return new Resolver<Field>(annotation) {
+                    @Override
+                    protected void resolve(Info info, List<Field> found) {
+                        if (!(info instanceof FieldInfo)) return;
+
+                        final FieldInfo fieldInfo = (FieldInfo) info;
+
+                        if (checkRuntimeAnnotation) {
+                            final ClassInfo classInfo = fieldInfo.getDeclaringClass();
+
+                            if (!seen(classInfo)) return;
+
+                            try {
+                                Class clazz = classInfo.get();
+                                for (Field field : clazz.getDeclaredFields()) {
+                                    if (field.isAnnotationPresent(annotation)) {
+                                        found.add(field);
+                                    }
+                                }
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(classInfo.getName());
+                            } catch (NoClassDefFoundError ncdfe) {
+                                classesNotLoaded().add(classInfo.getName());
+                            }
+                        } else {
+                            try {
+                                found.add((Field) fieldInfo.get());
+                            } catch (ClassNotFoundException e) {
+                                classesNotLoaded().add(fieldInfo.getDeclaringClass().getName());
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private static <T> List<T> list(Iterable<T> iterable) {
+        final List<T> list = new LinkedList<T>();
+        for (T t : iterable) {
+            list.add(t);
+        }
+        return list;
+    }
 
-                if (checkRuntimeAnnotation) {
-                    ClassInfo classInfo = fieldInfo.getDeclaringClass();
+    /**
+     * Walks the infos of an annotation and resolves them one at a time,
+     * an info can give several results (the checkRuntimeAnnotation mode resolves a whole class).
+     */
+    private abstract class Resolver<T> implements Iterator<T> {
+        private final Iterator<Info> infos;
+        private final List<T> found = new ArrayList<T>();
+        private Set<ClassInfo> seen;
+        private int position;
 
-                    if (seen.contains(classInfo)) continue;
+        protected Resolver(Class<? extends Annotation> annotation) {
+            classesNotLoaded().clear();
+            infos = getAnnotationInfos(annotation.getName()).iterator();
+        }
 
-                    seen.add(classInfo);
+        protected abstract void resolve(Info info, List<T> found);
 
-                    try {
-                        Class clazz = classInfo.get();
-                        for (Field field : clazz.getDeclaredFields()) {
-                            if (field.isAnnotationPresent(annotation)) {
-                                fields.add(field);
-                            }
+        /**
+         * @return true the first time the class is met
+         */
+        protected boolean seen(ClassInfo classInfo) {
+            if (seen == null) seen = new HashSet<ClassInfo>();
+            return seen.add(classInfo);
+        }
+
+        public boolean hasNext() {
+            while (position == found.size()) {
+                if (!infos.hasNext()) return false;
+
+                found.clear();
+                position = 0;
+                resolve(infos.next(), found);
+            }
+            return true;
+        }
+
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return found.get(position++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Same as {@link #findAnnotatedClasses(Class)} but nothing is loaded, the classes are described
+     * by the infos read from the bytecode. With checkRuntimeAnnotation, the retention of the annotation
+     * is read from its own bytecode, see {@link #isRuntimeAnnotation(String)}.
+     *
+     * @param annotation the annotation class name
+     */
+    public List<ClassInfo> findAnnotatedClassInfos(String annotation) {
+        return findAnnotatedInfos(annotation, ClassInfo.class, null);
+    }
+
+    public List<MethodInfo> findAnnotatedMethodInfos(String annotation) {
+        return findAnnotatedInfos(annotation, MethodInfo.class, false);
+    }
+
+    public List<MethodInfo> findAnnotatedConstructorInfos(String annotation) {
+        return findAnnotatedInfos(annotation, MethodInfo.class, true);
+    }
+
+    public List<FieldInfo> findAnnotatedFieldInfos(String annotation) {
+        return findAnnotatedInfos(annotation, FieldInfo.class, null);
+    }
+
+    public List<ParameterInfo> findAnnotatedMethodParameterInfos(String annotation) {
+        return findAnnotatedInfos(annotation, ParameterInfo.class, false);
+    }
+
+    public List<ParameterInfo> findAnnotatedConstructorParameterInfos(String annotation) {
+        return findAnnotatedInfos(annotation, ParameterInfo.class, true);
+    }
+
+    /**
+     * @param constructors for methods and parameters, true to only keep the constructors, false to exclude them
+     */
+    private <T extends Info> List<T> findAnnotatedInfos(String annotation, Class<T> type, Boolean constructors) {
+        if (annotation == null) throw new NullPointerException("annotation cannot be null");
+
+        final List<T> infos = new LinkedList<T>();
+        if (checkRuntimeAnnotation && !isRuntimeAnnotation(annotation)) return infos;
+
+        for (Info info : getAnnotationInfos(annotation)) {
+            if (!type.isInstance(info)) continue;
+
+            if (constructors != null) {
+                final MethodInfo method = info instanceof ParameterInfo ? ((ParameterInfo) info).getDeclaringMethod() : (MethodInfo) info;
+                if (method.isConstructor() != constructors) continue;
+            }
+            infos.add(type.cast(info));
+        }
+        return infos;
+    }
+
+    /**
+     * Reads the {@link java.lang.annotation.Retention} of the annotation from its bytecode, the annotation is not loaded.
+     * The bytecode is looked up in the archive then as a system resource, an annotation which can't be
+     * read is considered as a runtime one.
+     *
+     * @param annotation the annotation class name
+     * @return true if the annotation is kept at runtime
+     */
+    public boolean isRuntimeAnnotation(String annotation) {
+        if (base != null && !localClassInfos.containsKey(annotation) && base.classInfos.containsKey(annotation)) {
+            return base.isRuntimeAnnotation(annotation);
+        }
+
+        Boolean runtime = runtimeAnnotations.get(annotation);
+        if (runtime == null) {
+            runtime = readRetention(annotation);
+            runtimeAnnotations.put(annotation, runtime);
+        }
+        return runtime;
+    }
+
+    private boolean readRetention(String annotation) {
+        InputStream in;
+        try {
+            in = archive.getBytecode(annotation);
+        } catch (Exception e) {
+            in = ClassLoader.getSystemResourceAsStream(annotation.replace('.', '/') + ".class");
+        }
+        if (in == null) return true;
+
+        final boolean[] runtime = new boolean[1];
+        try {
+            new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM6) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    if (!"Ljava/lang/annotation/Retention;".equals(desc)) return null;
+
+                    return new AnnotationVisitor(Opcodes.ASM6) {
+                        @Override
+                        public void visitEnum(String name, String desc, String value) {
+                            runtime[0] = "RUNTIME".equals(value);
                         }
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(classInfo.getName());
-                    } catch (NoClassDefFoundError ncdfe) {
-                        classesNotLoaded.add(classInfo.getName());
-                    }
-                } else {
-                    try {
-                        fields.add((Field) fieldInfo.get());
-                    } catch (ClassNotFoundException e) {
-                        classesNotLoaded.add(fieldInfo.getDeclaringClass().getName());
-                    }
+                    };
                 }
+            }, ASM_FLAGS);
+            return runtime[0];
+        } catch (IOException e) {
+            return true;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // no-op
             }
         }
-        return fields;
     }
 
     public List<Class<?>> findClassesInPackage(String packageName, boolean recursive) {
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
-        for (ClassInfo classInfo : classInfos.values()) {
-            try {
-                if (recursive && classInfo.getPackageName().startsWith(packageName)) {
-                    classes.add(classInfo.get());
-                } else if (classInfo.getPackageName().equals(packageName)) {
+        final List<List<ClassInfo>> layers = new ArrayList<List<ClassInfo>>(packages(packageName, recursive));
+        if (base != null) {
+            layers.addAll(base.packages(packageName, recursive));
+        }
+        for (List<ClassInfo> infos : layers) {
+            for (ClassInfo classInfo : infos) {
+                try {
                     classes.add(classInfo.get());
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded().add(classInfo.getName());
                 }
-            } catch (ClassNotFoundException e) {
-                classesNotLoaded.add(classInfo.getName());
             }
         }
         return classes;
     }
 
+    /**
+     * @return the classInfos of the package or, when recursive, of all the packages starting with this name
+     */
+    private Collection<List<ClassInfo>> packages(String packageName, boolean recursive) {
+        synchronized (linkLock) {
+            if (packagedClasses != localClassInfos.size()) {
+                // classInfos was modified without putClassInfo
+                packages.clear();
+                packagedClasses = 0;
+                for (ClassInfo classInfo : localClassInfos.values()) {
+                    putPackage(null, classInfo);
+                }
+            }
+
+            if (recursive) {
+                // no package name contains \uffff, the range holds exactly the names starting with packageName
+                return new ArrayList<List<ClassInfo>>(packages.subMap(packageName, packageName + '\uffff').values());
+            }
+            final List<ClassInfo> infos = packages.get(packageName);
+            if (infos == null) return Collections.emptyList();
+            return Collections.singletonList(infos);
+        }
+    }
+
+    private void putClassInfo(ClassInfo classInfo) {
+        final ClassInfo previous = classInfos.put(classInfo.getName(), classInfo);
+        synchronized (linkLock) {
+            putPackage(previous, classInfo);
+        }
+    }
+
+    private void putPackage(ClassInfo previous, ClassInfo classInfo) {
+        final String packageName = classInfo.getPackageName();
+        List<ClassInfo> infos = packages.get(packageName);
+        if (infos == null) {
+            infos = new ArrayList<ClassInfo>();
+            packages.put(packageName, infos);
+        }
+        if (previous == null || !infos.remove(previous)) {
+            packagedClasses++;
+        }
+        infos.add(classInfo);
+    }
+
     public <T> List<Class<? extends T>> findSubclasses(Class<T> clazz) {
         if (clazz == null) throw new NullPointerException("class cannot be null");
 
-        classesNotLoaded.clear();
+        classesNotLoaded().clear();
 
         final ClassInfo classInfo = classInfos.get(clazz.getName());
 
@@ -1032,111 +2424,107 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private <T> void findSubclasses(ClassInfo classInfo, List<Class<? extends T>> found, Class<T> clazz) {
 
-        for (ClassInfo subclassInfo : classInfo.subclassInfos) {
+        for (ClassInfo subclassInfo : subclassInfos(classInfo)) {
 
             try {
                 found.add(subclassInfo.get().asSubclass(clazz));
             } catch (ClassNotFoundException e) {
-                classesNotLoaded.add(subclassInfo.getName());
+                classesNotLoaded().add(subclassInfo.getName());
             }
 
             findSubclasses(subclassInfo, found, clazz);
         }
     }
 
-    private <T> List<Class<? extends T>> _findSubclasses(Class<T> clazz) {
-        if (clazz == null) throw new NullPointerException("class cannot be null");
+    private List<ClassInfo> subclassInfos(ClassInfo classInfo) {
+        if (base == null) return classInfo.subclassInfos;
+
+        final List<ClassInfo> layered;
+        synchronized (baseSubclasses) {
+            layered = baseSubclasses.get(classInfo);
+        }
+        if (layered == null) return classInfo.subclassInfos;
 
-        List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
+        final List<ClassInfo> infos = new ArrayList<ClassInfo>(layered);
+        infos.addAll(classInfo.subclassInfos);
+        return infos;
+    }
 
+    private <T> void _findSubclasses(Class<? extends T> clazz, Class<T> type, Set<Class<? extends T>> classes) {
+        if (clazz == null) throw new NullPointerException("class cannot be null");
 
-        for (ClassInfo classInfo : classInfos.values()) {
+        for (ClassInfo classInfo : subclassesOf(clazz.getName())) {
 
             try {
 
-                final String name = clazz.getName();
-                if (name.equals(classInfo.superType)) {
-
-                    if (clazz.isAssignableFrom(classInfo.get())) {
-                        final Class<? extends T> asSubclass = classInfo.get().asSubclass(clazz);
-                        classes.add(asSubclass);
-                        classes.addAll(_findSubclasses(asSubclass));
+                if (clazz.isAssignableFrom(classInfo.get())) {
+                    final Class<? extends T> asSubclass = classInfo.get().asSubclass(type);
+                    if (classes.add(asSubclass)) {
+                        _findSubclasses(asSubclass, type, classes);
                     }
                 }
 
             } catch (ClassNotFoundException e) {
-                classesNotLoaded.add(classInfo.getName());
+                classesNotLoaded().add(classInfo.getName());
             }
 
         }
-
-        return classes;
     }
 
     public <T> List<Class<? extends T>> findImplementations(Class<T> clazz) {
         if (clazz == null) throw new NullPointerException("class cannot be null");
-        if (!clazz.isInterface()) new IllegalArgumentException("class must be an interface");
-        classesNotLoaded.clear();
+        if (!clazz.isInterface()) throw new IllegalArgumentException("class must be an interface");
+        classesNotLoaded().clear();
+
+        indexHierarchy();
 
         final String interfaceName = clazz.getName();
 
         // Collect all interfaces extending the main interface (recursively)
         // Collect all implementations of interfaces
         // i.e. all *directly* implementing classes
-        final List<ClassInfo> infos = collectImplementations(interfaceName);
+        final List<ClassInfo> infos = new ArrayList<ClassInfo>();
+        collectImplementations(interfaceName, infos, new HashSet<String>());
 
         // Collect all subclasses of implementations
-        final List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
+        final Set<Class<? extends T>> classes = new LinkedHashSet<Class<? extends T>>();
         for (ClassInfo info : infos) {
             try {
                 final Class<? extends T> impl = (Class<? extends T>) info.get();
 
-                if (!classes.contains(impl) && clazz.isAssignableFrom(impl)) {
-                    classes.add(impl);
-
-                    // Optimization: Don't need to call this method if parent class was already searched
-
-
-                    final List<Class<? extends T>> c = _findSubclasses((Class<T>) impl);
-                    for (final Class<? extends T> cl : c) {
-                        if (!classes.contains(cl)) {
-                            classes.add(cl);
-                        }
-                    }
+                // Optimization: Don't need to look for the subclasses if the class was already searched
+                if (clazz.isAssignableFrom(impl) && classes.add(impl)) {
+                    _findSubclasses(impl, clazz, classes);
                 }
 
             } catch (final ClassNotFoundException e) {
-                classesNotLoaded.add(info.getName());
+                classesNotLoaded().add(info.getName());
             }
         }
-        return classes;
+        return new LinkedList<Class<? extends T>>(classes);
     }
 
-    private List<ClassInfo> collectImplementations(String interfaceName) {
-        final List<ClassInfo> infos = new LinkedList<ClassInfo>();
-
-        for (ClassInfo classInfo : classInfos.values()) {
+    private void collectImplementations(String interfaceName, List<ClassInfo> infos, Set<String> visited) {
+        if (!visited.add(interfaceName)) return;
 
-            if (classInfo.interfaces.contains(interfaceName)) {
+        for (ClassInfo classInfo : implementorsOf(interfaceName)) {
 
-                infos.add(classInfo);
+            infos.add(classInfo);
 
-                try {
-
-                    final Class clazz = classInfo.get();
+            try {
 
-                    if (clazz.isInterface() && !clazz.isAnnotation()) {
+                final Class clazz = classInfo.get();
 
-                        infos.addAll(collectImplementations(classInfo.name));
+                if (clazz.isInterface() && !clazz.isAnnotation()) {
 
-                    }
+                    collectImplementations(classInfo.name, infos, visited);
 
-                } catch (ClassNotFoundException ignore) {
-                    // we'll deal with this later
                 }
+
+            } catch (ClassNotFoundException ignore) {
+                // we'll deal with this later
             }
         }
-        return infos;
     }
 
     protected List<Info> getAnnotationInfos(String name) {
@@ -1146,7 +2534,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected List<Info> initAnnotationInfos(String name) {
-        List<Info> infos = annotated.get(name);
+        List<Info> infos = localAnnotated.get(name);
         if (infos == null) {
             infos = new SingleLinkedList<Info>();
             annotated.put(name, infos);
@@ -1156,11 +2544,16 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     protected void readClassDef(String className) {
         if (classInfos.containsKey(className)) return;
+        if (unresolved != null && unresolved.contains(className)) {
+            // already looked up for this linking phase
+            if (!className.endsWith("$$")) classesNotLoaded().add(className);
+            return;
+        }
         try {
             readClassDef(archive.getBytecode(className));
         } catch (Exception e) {
             if (className.endsWith("$$")) return;
-            classesNotLoaded.add(className);
+            classesNotLoaded().add(className);
         }
     }
 
@@ -1173,6 +2566,134 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    /**
+     * Copies the bytecode in the scratch buffer of the current thread, the returned reader
+     * must be consumed before the next entry is read on this thread.
+     */
+    private static ClassReader read(BufferedEntry entry) throws IOException {
+        return new ClassReader(BYTECODE.get(), 0, readBytecode(entry));
+    }
+
+    /**
+     * Copies the bytecode in the scratch buffer of the current thread,
+     * the stream of the entries which aren't a {@link BufferedEntry} is read fully.
+     *
+     * @return the size of the bytecode
+     */
+    private static int readBytecode(Archive.Entry entry) throws IOException {
+        if (entry instanceof BufferedEntry) {
+            final BufferedEntry buffered = (BufferedEntry) entry;
+            final int size = buffered.getSize();
+            buffered.read(scratch(size));
+            return size;
+        }
+
+        final InputStream in = entry.getBytecode();
+        try {
+            byte[] buffer = scratch(0);
+            int size = 0;
+            int n;
+            while ((n = in.read(buffer, size, buffer.length - size)) != -1) {
+                size += n;
+                if (size == buffer.length) {
+                    buffer = scratch(size * 2);
+                }
+            }
+            return size;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the scratch buffer of the current thread, at least <code>size</code> long and keeping its previous content
+     */
+    private static byte[] scratch(int size) {
+        final byte[] buffer = BYTECODE.get();
+        if (buffer != null && buffer.length >= size) return buffer;
+
+        final byte[] grown = new byte[Math.max(size, 8192)];
+        if (buffer != null) {
+            System.arraycopy(buffer, 0, grown, 0, buffer.length);
+        }
+        BYTECODE.set(grown);
+        return grown;
+    }
+
+    /**
+     * @param scanner if not null, the classes not using any of its annotations are not fully read
+     * @param stubs true to return the name, parent and interfaces of the classes filtered out by the scanner, false to return null
+     * @return the info of the entry or null if it was filtered out
+     */
+    private Info parseClassDef(Archive.Entry entry, ConstantPoolScanner scanner, boolean stubs) throws IOException {
+        if (scanner == null && !(entry instanceof BufferedEntry)) return parseClassDef(entry.getBytecode());
+
+        final int size = readBytecode(entry);
+        return parseClassDef(BYTECODE.get(), size, scanner, stubs);
+    }
+
+    private Info parseClassDef(byte[] bytecode, int size, ConstantPoolScanner scanner, boolean stubs) {
+        final InfoBuildingVisitor visitor = new InfoBuildingVisitor(false);
+        if (scanner != null && !scanner.containsAny(bytecode, 0, size)) {
+            if (!stubs) return null;
+
+            final ClassReader reader = new ClassReader(bytecode, 0, size);
+            visitor.visit(0, reader.getAccess(), reader.getClassName(), null, reader.getSuperName(), reader.getInterfaces());
+            return visitor.getInfo() instanceof ClassInfo ? visitor.getInfo() : null;
+        }
+
+        new ClassReader(bytecode, 0, size).accept(visitor, ASM_FLAGS);
+        return visitor.getInfo();
+    }
+
+    /**
+     * Builds the info of a class without adding it to this finder, the finder state is not touched
+     * so this method can be called concurrently. Use {@link #publish(Info)} to index the result.
+     *
+     * @return the ClassInfo or PackageInfo read from the bytecode
+     */
+    Info parseClassDef(InputStream in) throws IOException {
+        try {
+            final InfoBuildingVisitor visitor = new InfoBuildingVisitor(false);
+            new ClassReader(in).accept(visitor, ASM_FLAGS);
+            return visitor.getInfo();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Indexes an info built by {@link #parseClassDef(InputStream)}, in the same order
+     * {@link InfoBuildingVisitor} would have indexed it while visiting the class.
+     */
+    void publish(Info info) {
+        if (info == null) return;
+
+        if (info instanceof ClassInfo) {
+            final ClassInfo classInfo = (ClassInfo) info;
+            putClassInfo(classInfo);
+            index(classInfo);
+            for (FieldInfo field : insertionOrder(classInfo.fields)) {
+                index(field);
+            }
+            for (MethodInfo method : insertionOrder(classInfo.methods)) {
+                index(method);
+                index(insertionOrder(method.parameters));
+            }
+        } else {
+            index(info);
+        }
+    }
+
+    /**
+     * SingleLinkedList iterates from the last added element, the visitor indexes from the first one.
+     */
+    static <T> List<T> insertionOrder(List<T> list) {
+        final List<T> ordered = new ArrayList<T>(list);
+        Collections.reverse(ordered);
+        return ordered;
+    }
+
     protected void readClassDef(Class clazz) {
         List<Info> infos = new LinkedList<Info>();
 
@@ -1231,7 +2752,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         if (linking) {
-            classInfos.put(classInfo.name, classInfo);
+            putClassInfo(classInfo);
         }
     }
 
@@ -1412,6 +2933,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final List<ClassInfo> subclassInfos = new SingleLinkedList<ClassInfo>();
         private final List<String> interfaces = new SingleLinkedList<String>();
         private final List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
+        // shared by the classes of the package, the package index looks it up for each class
+        private final String packageName;
         private Class<?> clazz;
 
 
@@ -1419,6 +2942,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             super(clazz);
             this.clazz = clazz;
             this.name = clazz.getName();
+            this.packageName = packageName(name);
             final Class superclass = clazz.getSuperclass();
             this.superType = superclass != null ? superclass.getName() : null;
             for (Class intrface : clazz.getInterfaces()) {
@@ -1428,7 +2952,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public ClassInfo(final String name, final String superType) {
             this.name = name;
-            this.superType = superType;
+            this.packageName = intern(packageName(name));
+            this.superType = intern(superType);
         }
 
         @Override
@@ -1450,7 +2975,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public String getPackageName() {
-            return name.indexOf(".") > 0 ? name.substring(0, name.lastIndexOf(".")) : "";
+            return packageName;
         }
 
         public List<MethodInfo> getConstructors() {
@@ -1488,7 +3013,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                 this.clazz = archive.loadClass(fixedName);
                 return clazz;
             } catch (ClassNotFoundException notFound) {
-                classesNotLoaded.add(name);
+                classesNotLoaded().add(name);
                 throw notFound;
             }
         }
@@ -1523,8 +3048,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public MethodInfo(ClassInfo declarignClass, String name, String descriptor) {
             this.declaringClass = declarignClass;
-            this.name = name;
-            this.descriptor = descriptor;
+            this.name = intern(name);
+            this.descriptor = intern(descriptor);
         }
 
         public String getDescriptor() {
@@ -1697,8 +3222,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public FieldInfo(ClassInfo declaringClass, String name, String type) {
             this.declaringClass = declaringClass;
-            this.name = name;
-            this.type = type;
+            this.name = intern(name);
+            this.type = intern(type);
         }
 
         public String getName() {
@@ -1717,6 +3242,10 @@ public class AnnotationFinder implements IAnnotationFinder {
             return t.getClassName();
         }
 
+        public String getDescriptor() {
+            return type;
+        }
+
         public String toString() {
             return declaringClass + "#" + name;
         }
@@ -1769,12 +3298,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public AnnotationInfo(String name) {
-            final Type type = Type.getType(name);
-            name = type.getClassName();
-            if (name == null) {
-                name = type.getDescriptor(); // name was already a class name
-            }
-            this.name = name;
+            final SymbolTable symbols = AnnotationFinder.this.symbols;
+            this.name = symbols == null ? SymbolTable.toClassName(name) : symbols.className(name);
         }
 
         public String getName() {
@@ -1786,18 +3311,43 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    private static String packageName(String className) {
+        return className.indexOf(".") > 0 ? className.substring(0, className.lastIndexOf(".")) : "";
+    }
+
+    private String intern(String value) {
+        final SymbolTable symbols = this.symbols;
+        return symbols == null ? value : symbols.intern(value);
+    }
+
     private void index(AnnotationInfo annotationInfo, Info info) {
         initAnnotationInfos(annotationInfo.getName()).add(info);
     }
 
     public class InfoBuildingVisitor extends EmptyVisitor {
         private Info info;
+        private final boolean publish;
+        // class of the member info, until the member gets an annotation and is added to it
+        private ClassInfo declaring;
 
         public InfoBuildingVisitor() {
+            this(true);
         }
 
         public InfoBuildingVisitor(Info info) {
+            this(info, true);
+        }
+
+        /**
+         * @param publish false to only build the infos, they are then not added to the finder
+         */
+        public InfoBuildingVisitor(boolean publish) {
+            this.publish = publish;
+        }
+
+        private InfoBuildingVisitor(Info info, boolean publish) {
             this.info = info;
+            this.publish = publish;
         }
 
         public Info getInfo() {
@@ -1821,12 +3371,15 @@ public class AnnotationFinder implements IAnnotationFinder {
 //                    new SignatureReader(signature).accept(new GenericAwareInfoBuildingVisitor(GenericAwareInfoBuildingVisitor.TYPE.CLASS, classInfo));
 //                }
                 info = classInfo;
-                classInfos.put(classInfo.getName(), classInfo);
+                if (publish) {
+                    putClassInfo(classInfo);
+                }
             }
         }
 
         private String javaName(String name) {
-            return (name == null) ? null : name.replace('/', '.');
+            final SymbolTable symbols = AnnotationFinder.this.symbols;
+            return symbols == null ? SymbolTable.toJavaName(name) : symbols.javaName(name);
         }
 
         @Override
@@ -1841,42 +3394,73 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         @Override
         public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            if (declaring != null) {
+                if (info instanceof FieldInfo) {
+                    declaring.getFields().add((FieldInfo) info);
+                } else {
+                    declaring.getMethods().add((MethodInfo) info);
+                }
+                declaring = null;
+            }
+
             AnnotationInfo annotationInfo = new AnnotationInfo(desc);
             info.getAnnotations().add(annotationInfo);
-            index(annotationInfo, info);
-            return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+            if (publish) {
+                index(annotationInfo, info);
+            }
+            return new InfoBuildingVisitor(annotationInfo, publish).annotationVisitor();
         }
 
         @Override
         public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            if (profile == ScanProfile.CLASSES) return null;
+
             ClassInfo classInfo = ((ClassInfo) info);
             FieldInfo fieldInfo = new FieldInfo(classInfo, name, desc);
-            classInfo.getFields().add(fieldInfo);
-            return new InfoBuildingVisitor(fieldInfo).fieldVisitor();
+            return member(classInfo, fieldInfo, classInfo.getFields()).fieldVisitor();
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (profile == ScanProfile.CLASSES) return null;
+
             ClassInfo classInfo = ((ClassInfo) info);
             MethodInfo methodInfo = new MethodInfo(classInfo, name, desc);
+            return member(classInfo, methodInfo, classInfo.getMethods()).methodVisitor();
+        }
 
-            classInfo.getMethods().add(methodInfo);
-            return new InfoBuildingVisitor(methodInfo).methodVisitor();
+        /**
+         * With {@link ScanProfile#ANNOTATED_MEMBERS} the member is only added to its class by its first annotation.
+         */
+        private <T extends Info> InfoBuildingVisitor member(ClassInfo classInfo, T member, List<T> members) {
+            final InfoBuildingVisitor visitor = new InfoBuildingVisitor(member, publish);
+            if (profile == ScanProfile.FULL) {
+                members.add(member);
+            } else {
+                visitor.declaring = classInfo;
+            }
+            return visitor;
         }
 
 
         @Override
         public AnnotationVisitor visitMethodParameterAnnotation(int param, String desc, boolean visible) {
+            if (profile != ScanProfile.FULL) return null;
+
             MethodInfo methodInfo = ((MethodInfo) info);
             List<AnnotationInfo> annotationInfos = methodInfo.getParameterAnnotations(param);
             AnnotationInfo annotationInfo = new AnnotationInfo(desc);
             annotationInfos.add(annotationInfo);
 
             ParameterInfo parameterInfo = new ParameterInfo(methodInfo, param);
+            // on both paths, publish(Info) indexes a detached parameter from its own annotations
+            parameterInfo.getAnnotations().add(annotationInfo);
             methodInfo.getParameters().add(parameterInfo);
-            index(annotationInfo, parameterInfo);
+            if (publish) {
+                index(annotationInfo, parameterInfo);
+            }
 
-            return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+            return new InfoBuildingVisitor(annotationInfo, publish).annotationVisitor();
         }
     }
 
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+import org.apache.xbean.finder.AnnotationFinder.Info;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gives each known class a dense id and keeps, for each annotation, supertype and package,
+ * the bitset of the ids of its classes. A {@link ClassQuery} combines these bitsets so
+ * no class is loaded before the result is known.
+ * <p/>
+ * The index is immutable, it is rebuilt by the finder when classes were added.
+ *
+ * @version $Rev$ $Date$
+ */
+final class ClassIndex {
+
+    private final ClassInfo[] classes;
+    private final int annotations;
+    private final Map<String, BitSet> annotated = new HashMap<String, BitSet>();
+    private final Map<String, BitSet> subtypes = new HashMap<String, BitSet>();
+    private final Map<String, BitSet> packages = new HashMap<String, BitSet>();
+
+    ClassIndex(Collection<ClassInfo> classInfos, Map<String, List<Info>> annotatedInfos) {
+        this.classes = classInfos.toArray(new ClassInfo[classInfos.size()]);
+        this.annotations = annotatedInfos.size();
+
+        final Map<ClassInfo, Integer> ids = new HashMap<ClassInfo, Integer>(classes.length * 2);
+        for (int id = 0; id < classes.length; id++) {
+            final ClassInfo classInfo = classes[id];
+            ids.put(classInfo, id);
+
+            if (classInfo.getSuperType() != null) {
+                bits(subtypes, classInfo.getSuperType()).set(id);
+            }
+            for (String interfce : classInfo.getInterfaces()) {
+                bits(subtypes, interfce).set(id);
+            }
+            bits(packages, classInfo.getPackageName()).set(id);
+        }
+
+        for (Map.Entry<String, List<Info>> entry : annotatedInfos.entrySet()) {
+            for (Info info : entry.getValue()) {
+                if (!(info instanceof ClassInfo)) continue;
+
+                final Integer id = ids.get(info);
+                if (id != null) {
+                    bits(annotated, entry.getKey()).set(id);
+                }
+            }
+        }
+    }
+
+    private static BitSet bits(Map<String, BitSet> index, String name) {
+        BitSet bits = index.get(name);
+        if (bits == null) {
+            bits = new BitSet();
+            index.put(name, bits);
+        }
+        return bits;
+    }
+
+    private static BitSet copy(BitSet bits) {
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    /**
+     * @return true if the index was built from these many classes and annotations
+     */
+    boolean isCurrent(int classCount, int annotationCount) {
+        return classes.length == classCount && annotations == annotationCount;
+    }
+
+    ClassInfo get(int id) {
+        return classes[id];
+    }
+
+    BitSet all() {
+        final BitSet all = new BitSet(classes.length);
+        all.set(0, classes.length);
+        return all;
+    }
+
+    BitSet annotatedWith(String annotation) {
+        return copy(annotated.get(annotation));
+    }
+
+    BitSet inPackage(String packageName) {
+        return copy(packages.get(packageName));
+    }
+
+    /**
+     * The classes extending or implementing the type, directly or through the known classes:
+     * the subclasses of an implementor and the implementors of a sub interface are included.
+     */
+    BitSet subtypesOf(String type) {
+        final BitSet found = new BitSet(classes.length);
+
+        final LinkedList<String> todo = new LinkedList<String>();
+        final Set<String> visited = new HashSet<String>();
+        todo.add(type);
+        while (!todo.isEmpty()) {
+            final String name = todo.removeFirst();
+            if (!visited.add(name)) continue;
+
+            final BitSet direct = subtypes.get(name);
+            if (direct == null) continue;
+
+            for (int id = direct.nextSetBit(0); id >= 0; id = direct.nextSetBit(id + 1)) {
+                if (found.get(id)) continue;
+                found.set(id);
+                todo.add(classes[id].getName());
+            }
+        }
+        return found;
+    }
+}
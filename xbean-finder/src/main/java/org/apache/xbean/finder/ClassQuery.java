@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.lang.annotation.Annotation;
+import java.util.BitSet;
+
+/**
+ * A combination of conditions on the scanned classes, evaluated by
+ * {@link AnnotationFinder#findClassInfos(ClassQuery)} on the index of the finder
+ * before any class is loaded.
+ * <p/>
+ * For instance the classes annotated with A and B, implementing X, in package com.foo:
+ * <pre>
+ * annotatedWith(A.class).and(annotatedWith(B.class)).and(implementing(X.class)).and(inPackage("com.foo"))
+ * </pre>
+ * Queries are immutable and can be reused.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class ClassQuery {
+
+    ClassQuery() {
+        // only the factory methods create queries
+    }
+
+    /**
+     * @return the ids of the matching classes, a bitset the caller can modify
+     */
+    abstract BitSet evaluate(ClassIndex index);
+
+    /**
+     * The classes directly annotated with this annotation.
+     */
+    public static ClassQuery annotatedWith(Class<? extends Annotation> annotation) {
+        return annotatedWith(annotation.getName());
+    }
+
+    public static ClassQuery annotatedWith(final String annotation) {
+        if (annotation == null) throw new NullPointerException("annotation cannot be null");
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                return index.annotatedWith(annotation);
+            }
+
+            @Override
+            public String toString() {
+                return "@" + annotation;
+            }
+        };
+    }
+
+    /**
+     * The classes and interfaces extending or implementing this type, directly or through other scanned classes.
+     */
+    public static ClassQuery implementing(Class<?> type) {
+        return implementing(type.getName());
+    }
+
+    public static ClassQuery implementing(final String type) {
+        if (type == null) throw new NullPointerException("type cannot be null");
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                return index.subtypesOf(type);
+            }
+
+            @Override
+            public String toString() {
+                return "implements " + type;
+            }
+        };
+    }
+
+    /**
+     * The classes of this package, sub packages excluded.
+     */
+    public static ClassQuery inPackage(final String packageName) {
+        if (packageName == null) throw new NullPointerException("packageName cannot be null");
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                return index.inPackage(packageName);
+            }
+
+            @Override
+            public String toString() {
+                return "package " + packageName;
+            }
+        };
+    }
+
+    /**
+     * The classes not matching the query.
+     */
+    public static ClassQuery not(final ClassQuery query) {
+        if (query == null) throw new NullPointerException("query cannot be null");
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                final BitSet all = index.all();
+                all.andNot(query.evaluate(index));
+                return all;
+            }
+
+            @Override
+            public String toString() {
+                return "not(" + query + ")";
+            }
+        };
+    }
+
+    public ClassQuery and(final ClassQuery other) {
+        if (other == null) throw new NullPointerException("query cannot be null");
+        final ClassQuery query = this;
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                final BitSet bits = query.evaluate(index);
+                if (!bits.isEmpty()) {
+                    bits.and(other.evaluate(index));
+                }
+                return bits;
+            }
+
+            @Override
+            public String toString() {
+                return "(" + query + " and " + other + ")";
+            }
+        };
+    }
+
+    public ClassQuery or(final ClassQuery other) {
+        if (other == null) throw new NullPointerException("query cannot be null");
+        final ClassQuery query = this;
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                final BitSet bits = query.evaluate(index);
+                bits.or(other.evaluate(index));
+                return bits;
+            }
+
+            @Override
+            public String toString() {
+                return "(" + query + " or " + other + ")";
+            }
+        };
+    }
+
+    /**
+     * Shortcut for and(not(other)).
+     */
+    public ClassQuery andNot(final ClassQuery other) {
+        if (other == null) throw new NullPointerException("query cannot be null");
+        final ClassQuery query = this;
+        return new ClassQuery() {
+            @Override
+            BitSet evaluate(ClassIndex index) {
+                final BitSet bits = query.evaluate(index);
+                if (!bits.isEmpty()) {
+                    bits.andNot(other.evaluate(index));
+                }
+                return bits;
+            }
+
+            @Override
+            public String toString() {
+                return "(" + query + " and not " + other + ")";
+            }
+        };
+    }
+}
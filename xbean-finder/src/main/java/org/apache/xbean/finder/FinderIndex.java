@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Writes the index read by {@link AnnotationFinder} for an {@link IndexedArchive}.
+ * <p/>
+ * The index is meant to be generated at build time, in the classes directory,
+ * as {@link IndexedArchive#INDEX}. The index of a directory is ignored once one
+ * of its class files is newer than it, the directory is then scanned.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class FinderIndex {
+
+    private FinderIndex() {
+        // no-op
+    }
+
+    /**
+     * Writes the index of the classes of this directory in its {@link IndexedArchive#INDEX} file.
+     * The class files are read from the directory, it doesn't have to be on the classpath.
+     *
+     * @return the index file
+     */
+    public static File write(File classes) throws IOException {
+        final File index = new File(classes, IndexedArchive.INDEX);
+        if (!index.getParentFile().isDirectory() && !index.getParentFile().mkdirs()) {
+            throw new IOException("Cannot create " + index.getParentFile());
+        }
+
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, FinderIndex.class.getClassLoader());
+        boolean written = false;
+        final OutputStream out = new FileOutputStream(index);
+        try {
+            write(new FileArchive(loader, classes), out);
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                // a partial index would be read as a broken one
+                index.delete();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Scans the archive and writes its index.
+     *
+     * @throws IOException if the index can't be written or if a class of the archive can't be read
+     */
+    public static void write(Archive archive, OutputStream out) throws IOException {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(), false);
+
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        InfoCodec.write(finder.readInfos(archive), data);
+        data.flush();
+    }
+}
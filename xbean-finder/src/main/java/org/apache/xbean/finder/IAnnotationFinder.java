@@ -43,6 +43,18 @@ public interface IAnnotationFinder {
 
     List<Field> findAnnotatedFields(Class<? extends Annotation> annotation);
 
+    /**
+     * Lazy versions of the queries above, the results are resolved as they are iterated
+     * so the iteration can stop at the first interesting match.
+     */
+    Iterable<Class<?>> streamAnnotatedClasses(Class<? extends Annotation> annotation);
+
+    Iterable<Method> streamAnnotatedMethods(Class<? extends Annotation> annotation);
+
+    Iterable<Constructor> streamAnnotatedConstructors(Class<? extends Annotation> annotation);
+
+    Iterable<Field> streamAnnotatedFields(Class<? extends Annotation> annotation);
+
     List<Class<?>> findClassesInPackage(String packageName, boolean recursive);
 
     <T> List<Class<? extends T>> findSubclasses(Class<T> clazz);
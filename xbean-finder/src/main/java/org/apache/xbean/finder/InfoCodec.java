@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.AnnotationInfo;
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+import org.apache.xbean.finder.AnnotationFinder.FieldInfo;
+import org.apache.xbean.finder.AnnotationFinder.Info;
+import org.apache.xbean.finder.AnnotationFinder.MethodInfo;
+import org.apache.xbean.finder.AnnotationFinder.PackageInfo;
+import org.apache.xbean.finder.AnnotationFinder.ParameterInfo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.xbean.finder.AnnotationFinder.insertionOrder;
+
+/**
+ * Compact binary form of the infos built by {@link AnnotationFinder} while reading an archive.
+ * <p/>
+ * All the strings are written once in a table and referenced by index, the infos
+ * are written in the order they were read so {@link AnnotationFinder#publish} indexes
+ * them exactly as a scan of the bytecode would.
+ *
+ * @version $Rev$ $Date$
+ */
+final class InfoCodec {
+    private static final int MAGIC = 0x58424649; // XBFI
+    private static final int VERSION = 1;
+
+    private static final byte CLASS = 1;
+    private static final byte PACKAGE = 2;
+
+    private InfoCodec() {
+        // no-op
+    }
+
+    public static void write(List<Info> infos, DataOutputStream out) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (Info info : infos) {
+            collect(info, strings);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        writeInt(out, strings.size());
+        for (String string : strings.keySet()) {
+            out.writeUTF(string);
+        }
+
+        writeInt(out, infos.size());
+        for (Info info : infos) {
+            if (info instanceof ClassInfo) {
+                final ClassInfo classInfo = (ClassInfo) info;
+                out.writeByte(CLASS);
+                writeString(out, strings, classInfo.getName());
+                writeString(out, strings, classInfo.getSuperType());
+                writeStrings(out, strings, insertionOrder(classInfo.getInterfaces()));
+                writeAnnotations(out, strings, classInfo.getAnnotations());
+
+                final List<FieldInfo> fields = insertionOrder(classInfo.getFields());
+                writeInt(out, fields.size());
+                for (FieldInfo field : fields) {
+                    writeString(out, strings, field.getName());
+                    writeString(out, strings, field.getDescriptor());
+                    writeAnnotations(out, strings, field.getAnnotations());
+                }
+
+                final List<MethodInfo> methods = insertionOrder(classInfo.getMethods());
+                writeInt(out, methods.size());
+                for (MethodInfo method : methods) {
+                    writeString(out, strings, method.getName());
+                    writeString(out, strings, method.getDescriptor());
+                    writeAnnotations(out, strings, method.getAnnotations());
+
+                    final List<ParameterInfo> parameters = insertionOrder(method.getParameters());
+                    writeInt(out, parameters.size());
+                    for (ParameterInfo parameter : parameters) {
+                        writeInt(out, Integer.parseInt(parameter.getName()));
+                        writeAnnotations(out, strings, parameter.getAnnotations());
+                    }
+                }
+            } else {
+                out.writeByte(PACKAGE);
+                writeString(out, strings, info.getName());
+                writeAnnotations(out, strings, info.getAnnotations());
+            }
+        }
+    }
+
+    public static List<Info> read(AnnotationFinder finder, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not an xbean-finder index");
+        final int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported xbean-finder index version " + version);
+
+        final String[] strings = new String[readInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        final int size = readInt(in);
+        final List<Info> infos = new ArrayList<Info>(size);
+        for (int i = 0; i < size; i++) {
+            final byte kind = in.readByte();
+            if (kind == CLASS) {
+                final ClassInfo classInfo = finder.new ClassInfo(readString(in, strings), readString(in, strings));
+                for (int j = readInt(in); j > 0; j--) {
+                    classInfo.getInterfaces().add(readString(in, strings));
+                }
+                readAnnotations(finder, in, strings, classInfo.getAnnotations());
+
+                for (int j = readInt(in); j > 0; j--) {
+                    final FieldInfo field = finder.new FieldInfo(classInfo, readString(in, strings), readString(in, strings));
+                    readAnnotations(finder, in, strings, field.getAnnotations());
+                    classInfo.getFields().add(field);
+                }
+
+                for (int j = readInt(in); j > 0; j--) {
+                    final MethodInfo method = finder.new MethodInfo(classInfo, readString(in, strings), readString(in, strings));
+                    readAnnotations(finder, in, strings, method.getAnnotations());
+
+                    for (int k = readInt(in); k > 0; k--) {
+                        final int index = readInt(in);
+                        final ParameterInfo parameter = finder.new ParameterInfo(method, index);
+                        readAnnotations(finder, in, strings, parameter.getAnnotations());
+                        method.getParameterAnnotations(index).addAll(parameter.getAnnotations());
+                        method.getParameters().add(parameter);
+                    }
+                    classInfo.getMethods().add(method);
+                }
+                infos.add(classInfo);
+            } else if (kind == PACKAGE) {
+                final PackageInfo packageInfo = finder.new PackageInfo(readString(in, strings));
+                readAnnotations(finder, in, strings, packageInfo.getAnnotations());
+                infos.add(packageInfo);
+            } else {
+                throw new IOException("Corrupted xbean-finder index, unknown info kind " + kind);
+            }
+        }
+        return infos;
+    }
+
+    private static void collect(Info info, Map<String, Integer> strings) {
+        add(strings, info.getName());
+        collect(info.getAnnotations(), strings);
+
+        if (info instanceof ClassInfo) {
+            final ClassInfo classInfo = (ClassInfo) info;
+            add(strings, classInfo.getSuperType());
+            for (String name : classInfo.getInterfaces()) {
+                add(strings, name);
+            }
+            for (FieldInfo field : classInfo.getFields()) {
+                add(strings, field.getName());
+                add(strings, field.getDescriptor());
+                collect(field.getAnnotations(), strings);
+            }
+            for (MethodInfo method : classInfo.getMethods()) {
+                add(strings, method.getName());
+                add(strings, method.getDescriptor());
+                collect(method.getAnnotations(), strings);
+                for (ParameterInfo parameter : method.getParameters()) {
+                    collect(parameter.getAnnotations(), strings);
+                }
+            }
+        }
+    }
+
+    private static void collect(List<AnnotationInfo> annotations, Map<String, Integer> strings) {
+        for (AnnotationInfo annotation : annotations) {
+            add(strings, descriptor(annotation.getName()));
+        }
+    }
+
+    private static void add(Map<String, Integer> strings, String string) {
+        if (string != null && !strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    /**
+     * AnnotationInfo(String) parses its argument as a descriptor, a plain class name
+     * like "Bar" would be understood as the byte primitive.
+     */
+    private static String descriptor(String className) {
+        return "L" + className.replace('.', '/') + ";";
+    }
+
+    private static void writeAnnotations(DataOutputStream out, Map<String, Integer> strings, List<AnnotationInfo> annotations) throws IOException {
+        writeInt(out, annotations.size());
+        for (AnnotationInfo annotation : annotations) {
+            writeString(out, strings, descriptor(annotation.getName()));
+        }
+    }
+
+    private static void readAnnotations(AnnotationFinder finder, DataInputStream in, String[] strings, List<AnnotationInfo> annotations) throws IOException {
+        for (int i = readInt(in); i > 0; i--) {
+            annotations.add(finder.new AnnotationInfo(readString(in, strings)));
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> strings, List<String> values) throws IOException {
+        writeInt(out, values.size());
+        for (String value : values) {
+            writeString(out, strings, value);
+        }
+    }
+
+    /**
+     * 0 stands for null, the other values are the string index plus one.
+     */
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String string) throws IOException {
+        writeInt(out, string == null ? 0 : strings.get(string) + 1);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        final int index = readInt(in);
+        if (index == 0) return null;
+        if (index > strings.length) throw new IOException("Corrupted xbean-finder index, unknown string " + index);
+        return strings[index - 1];
+    }
+
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupted xbean-finder index, malformed integer");
+    }
+}
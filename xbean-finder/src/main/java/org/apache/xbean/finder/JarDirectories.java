@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The files of each directory of a jar, listed the first time one of them is read.
+ * <p/>
+ * The listings are shared by all the {@link ResourceFinder} instances, reading the same
+ * directory again is a map lookup. They are softly referenced, the jars of the listings
+ * cleared by the GC are forgotten, and the listing of a jar file is read again when
+ * the file is modified.
+ *
+ * @version $Rev$ $Date$
+ */
+final class JarDirectories {
+
+    private static final ConcurrentMap<String, Listing> LISTINGS = new ConcurrentHashMap<String, Listing>();
+    // the listings cleared by the GC, their keys are removed from LISTINGS
+    private static final ReferenceQueue<JarDirectories> CLEARED = new ReferenceQueue<JarDirectories>();
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+    private final Map<String, List<String>> files = new HashMap<String, List<String>>();
+    private final Set<String> entries = new HashSet<String>();
+
+    private JarDirectories(JarFile jar, File file) {
+        this.file = file;
+        this.lastModified = file == null ? 0 : file.lastModified();
+        this.length = file == null ? 0 : file.length();
+
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries != null && entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            this.entries.add(name);
+            if (entry.isDirectory()) continue;
+
+            final int slash = name.lastIndexOf('/');
+            final String directory = name.substring(0, slash + 1);
+
+            List<String> names = files.get(directory);
+            if (names == null) {
+                names = new ArrayList<String>();
+                files.put(directory, names);
+            }
+            names.add(name.substring(slash + 1));
+        }
+    }
+
+    /**
+     * @return false if the jar file changed since it was listed
+     */
+    boolean isCurrent() {
+        return file == null || (file.lastModified() == lastModified && file.length() == length);
+    }
+
+    /**
+     * Like {@link JarFile#getEntry(String)}, a directory is found with or without its trailing slash.
+     */
+    boolean contains(String name) {
+        return entries.contains(name) || entries.contains(name + "/");
+    }
+
+    /**
+     * @param location a jar url, jar:file:/app.jar!/META-INF/services/ for instance
+     * @param directory the directory in the jar, ending with a slash
+     * @return the names of the files directly in the directory
+     */
+    static List<String> list(URL location, String directory) throws IOException {
+        final List<String> names = of(location).files.get(directory);
+        if (names == null) return Collections.emptyList();
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param location a jar url, only the jar file part is used
+     * @return the current listing of the jar
+     */
+    static JarDirectories of(URL location) throws IOException {
+        expunge();
+
+        final String key = key(location);
+
+        final Listing listing = LISTINGS.get(key);
+        JarDirectories directories = listing == null ? null : listing.get();
+        if (directories == null || !directories.isCurrent()) {
+            directories = read(location);
+            LISTINGS.put(key, new Listing(key, directories));
+        }
+        return directories;
+    }
+
+    private static void expunge() {
+        for (Reference<? extends JarDirectories> cleared = CLEARED.poll(); cleared != null; cleared = CLEARED.poll()) {
+            final Listing listing = (Listing) cleared;
+            // unless the jar was listed again since
+            LISTINGS.remove(listing.key, listing);
+        }
+    }
+
+    /**
+     * @return the jar file part of a jar url, file:/app.jar for jar:file:/app.jar!/META-INF/services/
+     */
+    static String key(URL location) {
+        final String spec = location.getFile();
+        final int separator = spec.indexOf("!/");
+        return separator < 0 ? spec : spec.substring(0, separator);
+    }
+
+    private static JarDirectories read(URL location) throws IOException {
+        final JarURLConnection connection = (JarURLConnection) location.openConnection();
+        final File file = file(connection.getJarFileURL());
+        if (file == null) {
+            return new JarDirectories(connection.getJarFile(), null);
+        }
+
+        // the jar url connections may keep serving a replaced jar from their cache
+        final JarFile jar = new JarFile(file);
+        try {
+            return new JarDirectories(jar, file);
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static final class Listing extends SoftReference<JarDirectories> {
+        private final String key;
+
+        private Listing(String key, JarDirectories directories) {
+            super(directories, CLEARED);
+            this.key = key;
+        }
+    }
+
+    private static File file(URL jar) {
+        if (jar == null || !"file".equals(jar.getProtocol())) return null;
+        return new File(ResourceFinder.decode(jar.getPath()));
+    }
+}
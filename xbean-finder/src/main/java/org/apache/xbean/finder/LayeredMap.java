@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map reading through to the map of a base layer, the writes only go to the local map
+ * so the base can be shared. When both layers have a value for a key the local one is
+ * seen, unless {@link #merge(Object, Object)} combines them.
+ *
+ * @version $Rev$ $Date$
+ */
+class LayeredMap<V> extends AbstractMap<String, V> {
+
+    private final Map<String, V> local;
+    private final Map<String, V> base;
+    // keys of the local map also in the base
+    private int shared;
+
+    LayeredMap(Map<String, V> local, Map<String, V> base) {
+        this.local = local;
+        this.base = base;
+        for (String key : local.keySet()) {
+            if (base.containsKey(key)) shared++;
+        }
+    }
+
+    /**
+     * A layered map of lists, a key in both layers has the local values then the base values.
+     */
+    static <T> LayeredMap<List<T>> ofLists(Map<String, List<T>> local, Map<String, List<T>> base) {
+        return new LayeredMap<List<T>>(local, base) {
+            @Override
+            protected List<T> merge(List<T> localValue, List<T> baseValue) {
+                return new ConcatList<T>(localValue, baseValue);
+            }
+        };
+    }
+
+    protected V merge(V localValue, V baseValue) {
+        return localValue;
+    }
+
+    public Map<String, V> getLocal() {
+        return local;
+    }
+
+    @Override
+    public V get(Object key) {
+        final V localValue = local.get(key);
+        final V baseValue = base.get(key);
+        if (localValue == null) return baseValue;
+        if (baseValue == null) return localValue;
+        return merge(localValue, baseValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return local.containsKey(key) || base.containsKey(key);
+    }
+
+    @Override
+    public V put(String key, V value) {
+        if (!local.containsKey(key) && base.containsKey(key)) shared++;
+        return local.put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!local.containsKey(key)) {
+            if (base.containsKey(key)) throw new UnsupportedOperationException("Can't remove " + key + " from the base layer");
+            return null;
+        }
+        if (base.containsKey(key)) shared--;
+        return local.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Can't clear the base layer");
+    }
+
+    @Override
+    public int size() {
+        return local.size() + base.size() - shared;
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Entries();
+            }
+
+            @Override
+            public int size() {
+                return LayeredMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * The local entries then the base entries not hidden by a local one.
+     */
+    private class Entries implements Iterator<Entry<String, V>> {
+        private final Iterator<Entry<String, V>> locals = local.entrySet().iterator();
+        private final Iterator<Entry<String, V>> bases = base.entrySet().iterator();
+        private Entry<String, V> next;
+
+        public boolean hasNext() {
+            while (next == null) {
+                if (locals.hasNext()) {
+                    final Entry<String, V> entry = locals.next();
+                    final V baseValue = base.get(entry.getKey());
+                    next = baseValue == null ? entry : new MergedEntry(entry.getKey(), merge(entry.getValue(), baseValue));
+                } else if (bases.hasNext()) {
+                    final Entry<String, V> entry = bases.next();
+                    if (!local.containsKey(entry.getKey())) next = entry;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Entry<String, V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Entry<String, V> entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class MergedEntry implements Entry<String, V> {
+        private final String key;
+        private final V value;
+
+        private MergedEntry(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            final Entry<?, ?> entry = (Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && value.equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+    }
+
+    /**
+     * Read only view of two lists, one after the other.
+     */
+    private static class ConcatList<T> extends AbstractList<T> {
+        private final List<T> first;
+        private final List<T> second;
+
+        private ConcatList(List<T> first, List<T> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public T get(int index) {
+            final int size = first.size();
+            return index < size ? first.get(index) : second.get(index - size);
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private Iterator<T> current = first.iterator();
+                private boolean onSecond;
+
+                public boolean hasNext() {
+                    if (!current.hasNext() && !onSecond) {
+                        current = second.iterator();
+                        onSecond = true;
+                    }
+                    return current.hasNext();
+                }
+
+                public T next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return current.next();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -16,13 +16,12 @@
  */
 package org.apache.xbean.finder;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
-import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -30,13 +29,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * @author David Blevins
@@ -47,6 +48,9 @@ public class ResourceFinder {
     private final String path;
     private final ClassLoader classLoader;
     private final List<String> resourcesNotLoaded = new ArrayList<String>();
+    // the entries of the jars already searched by findResource, by jar file
+    private final Map<String, JarDirectories> jars = new ConcurrentHashMap<String, JarDirectories>();
+    private volatile Executor executor;
 
     public ResourceFinder(URL... urls) {
         this(null, Thread.currentThread().getContextClassLoader(), urls);
@@ -113,6 +117,16 @@ public class ResourceFinder {
         return Collections.unmodifiableList(resourcesNotLoaded);
     }
 
+    /**
+     * The findAll*, findAvailable*, mapAll* and mapAvailable* methods read
+     * their resources in parallel with this executor, null (the default) reads
+     * them in the calling thread.
+     */
+    public ResourceFinder executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
     //
     //   Find
@@ -180,11 +194,8 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            String string = readContents(url);
-            strings.add(string);
+        for (Object read : readAll(Collections.list(getResources(fulluri)), false)) {
+            strings.add(content(read, String.class));
         }
         return strings;
     }
@@ -204,14 +215,14 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            try {
-                String string = readContents(url);
-                strings.add(string);
-            } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources, false);
+        for (int i = 0; i < contents.size(); i++) {
+            Object read = contents.get(i);
+            if (read instanceof IOException) {
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
+            } else {
+                strings.add(content(read, String.class));
             }
         }
         return strings;
@@ -244,12 +255,11 @@ public class ResourceFinder {
     public Map<String, String> mapAllStrings(String uri) throws IOException {
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            String value = readContents(url);
-            strings.put(name, value);
+        List<String> names = new ArrayList<String>(resourcesMap.keySet());
+        List<URL> resources = new ArrayList<URL>(resourcesMap.values());
+        List<Object> contents = readAll(resources, false);
+        for (int i = 0; i < contents.size(); i++) {
+            strings.put(names.get(i), content(contents.get(i), String.class));
         }
         return strings;
     }
@@ -283,15 +293,15 @@ public class ResourceFinder {
         resourcesNotLoaded.clear();
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            try {
-                String value = readContents(url);
-                strings.put(name, value);
-            } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        List<String> names = new ArrayList<String>(resourcesMap.keySet());
+        List<URL> resources = new ArrayList<URL>(resourcesMap.values());
+        List<Object> contents = readAll(resources, false);
+        for (int i = 0; i < contents.size(); i++) {
+            Object read = contents.get(i);
+            if (read instanceof IOException) {
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
+            } else {
+                strings.put(names.get(i), content(read, String.class));
             }
         }
         return strings;
@@ -687,11 +697,8 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            Properties props = loadProperties(url);
-            properties.add(props);
+        for (Object read : readAll(Collections.list(getResources(fulluri)), true)) {
+            properties.add(content(read, Properties.class));
         }
         return properties;
     }
@@ -721,14 +728,14 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            try {
-                Properties props = loadProperties(url);
-                properties.add(props);
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources, true);
+        for (int i = 0; i < contents.size(); i++) {
+            Object read = contents.get(i);
+            if (read instanceof Exception) {
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
+            } else {
+                properties.add(content(read, Properties.class));
             }
         }
         return properties;
@@ -758,12 +765,11 @@ public class ResourceFinder {
     public Map<String, Properties> mapAllProperties(String uri) throws IOException {
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            Properties properties = loadProperties(url);
-            propertiesMap.put(string, properties);
+        List<String> names = new ArrayList<String>(map.keySet());
+        List<URL> resources = new ArrayList<URL>(map.values());
+        List<Object> contents = readAll(resources, true);
+        for (int i = 0; i < contents.size(); i++) {
+            propertiesMap.put(names.get(i), content(contents.get(i), Properties.class));
         }
         return propertiesMap;
     }
@@ -794,15 +800,15 @@ public class ResourceFinder {
         resourcesNotLoaded.clear();
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            try {
-                Properties properties = loadProperties(url);
-                propertiesMap.put(string, properties);
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        List<String> names = new ArrayList<String>(map.keySet());
+        List<URL> resources = new ArrayList<URL>(map.values());
+        List<Object> contents = readAll(resources, true);
+        for (int i = 0; i < contents.size(); i++) {
+            Object read = contents.get(i);
+            if (read instanceof Exception) {
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
+            } else {
+                propertiesMap.put(names.get(i), content(read, Properties.class));
             }
         }
         return propertiesMap;
@@ -861,25 +867,7 @@ public class ResourceFinder {
     }
 
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
-        JarURLConnection conn = (JarURLConnection) location.openConnection();
-        JarFile jarfile = null;
-        jarfile = conn.getJarFile();
-
-        Enumeration<JarEntry> entries = jarfile.entries();
-        while (entries != null && entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
-            String name = entry.getName();
-
-            if (entry.isDirectory() || !name.startsWith(basePath) || name.length() == basePath.length()) {
-                continue;
-            }
-
-            name = name.substring(basePath.length());
-
-            if (name.contains("/")) {
-                continue;
-            }
-
+        for (String name : JarDirectories.list(location, basePath)) {
             URL resource = new URL(location, name);
             resources.put(name, resource);
         }
@@ -887,18 +875,15 @@ public class ResourceFinder {
 
     private Properties loadProperties(URL resource) throws IOException {
         InputStream in = resource.openStream();
-
-        BufferedInputStream reader = null;
         try {
-            reader = new BufferedInputStream(in);
+            // Properties reads through its own buffer
             Properties properties = new Properties();
-            properties.load(reader);
+            properties.load(in);
 
             return properties;
         } finally {
             try {
                 in.close();
-                reader.close();
             } catch (Exception e) {
             }
         }
@@ -906,28 +891,80 @@ public class ResourceFinder {
 
     private String readContents(URL resource) throws IOException {
         InputStream in = resource.openStream();
-        BufferedInputStream reader = null;
-        StringBuffer sb = new StringBuffer();
-
         try {
-            reader = new BufferedInputStream(in);
-
-            int b = reader.read();
-            while (b != -1) {
-                sb.append((char) b);
-                b = reader.read();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
             }
 
-            return sb.toString().trim();
+            return out.toString("UTF-8").trim();
         } finally {
             try {
                 in.close();
-                reader.close();
             } catch (Exception e) {
             }
         }
     }
 
+    /**
+     * Reads the resources, in parallel if an executor is set.
+     *
+     * @return for each resource, in order, its String or Properties content
+     * or the exception thrown reading it
+     */
+    private List<Object> readAll(List<URL> resources, final boolean properties) throws IOException {
+        final List<Object> contents = new ArrayList<Object>(resources.size());
+        final Executor executor = this.executor;
+        if (executor == null || resources.size() < 2) {
+            for (URL resource : resources) {
+                contents.add(read(resource, properties));
+            }
+            return contents;
+        }
+
+        final List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(resources.size());
+        for (final URL resource : resources) {
+            final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+                public Object call() {
+                    return read(resource, properties);
+                }
+            });
+            executor.execute(task);
+            tasks.add(task);
+        }
+        for (FutureTask<Object> task : tasks) {
+            try {
+                contents.add(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the resources");
+            } catch (ExecutionException e) {
+                contents.add(e.getCause());
+            }
+        }
+        return contents;
+    }
+
+    private Object read(URL resource, boolean properties) {
+        try {
+            return properties ? loadProperties(resource) : readContents(resource);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    private static <T> T content(Object read, Class<T> type) throws IOException {
+        if (read instanceof IOException) {
+            throw (IOException) read;
+        } else if (read instanceof RuntimeException) {
+            throw (RuntimeException) read;
+        } else if (read instanceof Error) {
+            throw (Error) read;
+        }
+        return type.cast(read);
+    }
+
     public URL getResource(String fullUri) {
         if (urls == null){
             return classLoader.getResource(fullUri);
@@ -959,58 +996,43 @@ public class ResourceFinder {
             try {
                 String protocol = currentUrl.getProtocol();
                 if (protocol.equals("jar")) {
-                    /*
-                    * If the connection for currentUrl or resURL is
-                    * used, getJarFile() will throw an exception if the
-                    * entry doesn't exist.
-                    */
-                    URL jarURL = ((JarURLConnection) currentUrl.openConnection()).getJarFileURL();
-                    JarFile jarFile;
-                    JarURLConnection juc;
-                    try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();
-                        jarFile = juc.getJarFile();
-                    } catch (IOException e) {
-                        // Don't look for this jar file again
-                        search[i] = null;
-                        throw e;
+                    String jarKey = JarDirectories.key(currentUrl);
+                    JarDirectories jar = jars.get(jarKey);
+                    if (jar == null || !jar.isCurrent()) {
+                        try {
+                            jar = JarDirectories.of(currentUrl);
+                        } catch (IOException e) {
+                            // Don't look for this jar file again
+                            search[i] = null;
+                            throw e;
+                        }
+                        jars.put(jarKey, jar);
                     }
 
-                    try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();                        
-                        jarFile = juc.getJarFile();
-                        String entryName;
-                        if (currentUrl.getFile().endsWith("!/")) {
-                            entryName = resourceName;
-                        } else {
-                            String file = currentUrl.getFile();
-                            int sepIdx = file.lastIndexOf("!/");
-                            if (sepIdx == -1) {
-                                // Invalid URL, don't look here again
-                                search[i] = null;
-                                continue;
-                            }
-                            sepIdx += 2;
-                            StringBuffer sb = new StringBuffer(file.length() - sepIdx + resourceName.length());
-                            sb.append(file.substring(sepIdx));
-                            sb.append(resourceName);
-                            entryName = sb.toString();
-                        }
-                        if (entryName.equals("META-INF/") && jarFile.getEntry("META-INF/MANIFEST.MF") != null) {
-                            return targetURL(currentUrl, "META-INF/MANIFEST.MF");
-                        }
-                        if (jarFile.getEntry(entryName) != null) {
-                            return targetURL(currentUrl, resourceName);
-                        }
-                    } finally {
-                        if (!juc.getUseCaches()) {
-                            try {
-                                jarFile.close();
-                            } catch (Exception e) {
-                            }
+                    String entryName;
+                    if (currentUrl.getFile().endsWith("!/")) {
+                        entryName = resourceName;
+                    } else {
+                        String file = currentUrl.getFile();
+                        int sepIdx = file.lastIndexOf("!/");
+                        if (sepIdx == -1) {
+                            // Invalid URL, don't look here again
+                            search[i] = null;
+                            continue;
                         }
+                        sepIdx += 2;
+                        StringBuffer sb = new StringBuffer(file.length() - sepIdx + resourceName.length());
+                        sb.append(file.substring(sepIdx));
+                        sb.append(resourceName);
+                        entryName = sb.toString();
                     }
-                    
+                    if (entryName.equals("META-INF/") && jar.contains("META-INF/MANIFEST.MF")) {
+                        return targetURL(currentUrl, "META-INF/MANIFEST.MF");
+                    }
+                    if (jar.contains(entryName)) {
+                        return targetURL(currentUrl, resourceName);
+                    }
+
                 } else if (protocol.equals("file")) {
                     String baseFile = currentUrl.getFile();
                     String host = currentUrl.getHost();
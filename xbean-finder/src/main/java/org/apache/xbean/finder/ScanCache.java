@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent cache of the infos read from jar files, one file per jar in the cache directory.
+ * <p/>
+ * An entry is only reused when the jar still has the same path, size, last modification
+ * time and content hash, otherwise the jar is scanned again and the entry replaced.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanCache {
+    private static final int HEADER = 0x58424643; // XBFC
+
+    private final File directory;
+
+    public ScanCache(File directory) {
+        if (directory == null) throw new NullPointerException("directory cannot be null");
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Removes all the cached entries.
+     */
+    public void clear() {
+        final File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().endsWith(".idx")) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Computes the key of the jar, to be passed to {@link #load} and {@link #store}.
+     */
+    Fingerprint fingerprint(File jar) throws IOException {
+        final File file = jar.getAbsoluteFile();
+        return new Fingerprint(file.getPath(), file.length(), file.lastModified(), hash(file));
+    }
+
+    /**
+     * @return the infos cached for this fingerprint or null if there is no valid entry
+     */
+    List<Info> load(AnnotationFinder finder, Fingerprint fingerprint) {
+        final File file = entry(fingerprint);
+        if (!file.isFile()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != HEADER) return null;
+            if (!fingerprint.equals(Fingerprint.read(in))) return null;
+
+            return InfoCodec.read(finder, in);
+        } catch (IOException e) {
+            // a stale or corrupted entry, the archive is scanned again and the entry rewritten
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    void store(Fingerprint fingerprint, List<Info> infos) {
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        final File file = entry(fingerprint);
+        DataOutputStream out = null;
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(HEADER);
+            fingerprint.write(out);
+            InfoCodec.write(infos, out);
+            out.close();
+            out = null;
+
+            // readers never see a partially written entry
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException e) {
+            // the cache is an optimization only
+            close(out);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private File entry(Fingerprint fingerprint) {
+        try {
+            return new File(directory, toHex(digest().digest(fingerprint.path.getBytes("UTF-8"))) + ".idx");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        final MessageDigest digest = digest();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // no-op
+        }
+    }
+
+    static class Fingerprint {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+
+        Fingerprint(String path, long size, long lastModified, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeShort(hash.length);
+            out.write(hash);
+        }
+
+        private static Fingerprint read(DataInputStream in) throws IOException {
+            final String path = in.readUTF();
+            final long size = in.readLong();
+            final long lastModified = in.readLong();
+            final byte[] hash = new byte[in.readUnsignedShort()];
+            in.readFully(hash);
+            return new Fingerprint(path, size, lastModified, hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Fingerprint that = (Fingerprint) o;
+            return size == that.size && lastModified == that.lastModified
+                    && path.equals(that.path) && Arrays.equals(hash, that.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+}
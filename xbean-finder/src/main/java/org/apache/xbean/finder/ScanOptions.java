@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.asm6.original.commons.ConstantPoolScanner;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Settings applied by {@link AnnotationFinder} while it reads its {@link org.apache.xbean.finder.archive.Archive}.
+ * <p/>
+ * The defaults reproduce the historical behavior: every entry is parsed sequentially on the calling thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanOptions {
+    private Executor executor;
+    private int window = 512;
+    private ScanCache cache;
+    private Set<String> annotations;
+    private ConstantPoolScanner scanner;
+    private boolean stubs = true;
+    private ScanProfile profile = ScanProfile.FULL;
+    private boolean incremental;
+    private Executor readers;
+    private long readAhead = 16 * 1024 * 1024;
+
+    /**
+     * Parses the archive entries concurrently using the given executor.
+     * <p/>
+     * Entries are still iterated on the calling thread and the parsed
+     * infos are indexed in the archive order, so the resulting finder
+     * is identical to the one built by the sequential scan.
+     * <p/>
+     * The finder keeps the executor to read the missing parents and interfaces when it
+     * is linked (see {@link AnnotationFinder#link()}), they are read on the calling thread
+     * once the executor is shut down.
+     *
+     * @param executor executor running the parsing tasks, null to scan sequentially
+     * @return this
+     */
+    public ScanOptions executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Maximum number of entries parsed ahead of the indexing, bounds the memory used by a parallel scan.
+     *
+     * @param window number of in-flight entries, must be positive
+     * @return this
+     */
+    public ScanOptions window(int window) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive: " + window);
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * Reuses the infos of the jars which did not change since a previous scan,
+     * the other jars are scanned and their infos stored in the cache.
+     * <p/>
+     * The jars are found in the {@link org.apache.xbean.finder.archive.CompositeArchive} children,
+     * the archives wrapped in a {@link org.apache.xbean.finder.archive.FilteredArchive} are always
+     * scanned: neither the cache nor the index of an {@link org.apache.xbean.finder.archive.IndexedArchive}
+     * is used for them.
+     *
+     * @param cache persistent cache, null to always scan the jars
+     * @return this
+     */
+    public ScanOptions cache(ScanCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Reads the bytecode of the entries on these threads while the {@link #executor(Executor)}
+     * parses the entries already read, the calling thread still indexes them in the archive order.
+     * <p/>
+     * The entries of all the archives of a {@link org.apache.xbean.finder.archive.CompositeArchive}
+     * go through the same pipeline so the reads of an archive overlap the parsing of the previous one.
+     * The memory used is bounded by the {@link #window(int)} and the {@link #readAhead(long)}.
+     *
+     * @param readers executor reading the entries, null to read them with the parsing
+     * @return this
+     */
+    public ScanOptions readers(Executor readers) {
+        this.readers = readers;
+        return this;
+    }
+
+    /**
+     * Maximum number of bytes read by the {@link #readers(Executor)} and not parsed yet,
+     * the reads are only started again once the parsing caught up.
+     *
+     * @param readAhead number of bytes, must be positive
+     * @return this
+     */
+    public ScanOptions readAhead(long readAhead) {
+        if (readAhead <= 0) throw new IllegalArgumentException("readAhead must be positive: " + readAhead);
+        this.readAhead = readAhead;
+        return this;
+    }
+
+    /**
+     * Fully reads only the classes using one of these annotations, the constant pool of
+     * the other classes is checked and they are either recorded as a stub (name, parent
+     * and interfaces, see {@link #stubs(boolean)}) or skipped.
+     * <p/>
+     * Annotations reached through meta-annotations are not seen by this pre-filter, the {@link ScanCache}
+     * and the index of an {@link org.apache.xbean.finder.archive.IndexedArchive} are not used in this mode.
+     *
+     * @param annotations annotation class names, null to read all the classes
+     * @return this
+     */
+    public ScanOptions annotations(Collection<String> annotations) {
+        if (annotations == null) {
+            this.annotations = null;
+            this.scanner = null;
+            return this;
+        }
+
+        this.annotations = new HashSet<String>(annotations);
+        final List<String> descriptors = new ArrayList<String>(annotations.size());
+        for (String annotation : annotations) {
+            descriptors.add("L" + annotation.replace('.', '/') + ";");
+        }
+        this.scanner = new ConstantPoolScanner(descriptors);
+        return this;
+    }
+
+    public ScanOptions annotations(Class<? extends Annotation>... annotations) {
+        final Set<String> names = new HashSet<String>();
+        for (Class<? extends Annotation> annotation : annotations) {
+            names.add(annotation.getName());
+        }
+        return annotations(names);
+    }
+
+    /**
+     * @param stubs true to keep the classes filtered out by {@link #annotations} as
+     *              stubs so subclasses and implementations can still be found, false to skip them
+     * @return this
+     */
+    public ScanOptions stubs(boolean stubs) {
+        this.stubs = stubs;
+        return this;
+    }
+
+    /**
+     * Restricts the members kept for each class, the {@link ScanCache} and the index of an
+     * {@link org.apache.xbean.finder.archive.IndexedArchive} are only used by {@link ScanProfile#FULL} scans.
+     *
+     * @param profile the members to read
+     * @return this
+     */
+    public ScanOptions profile(ScanProfile profile) {
+        if (profile == null) throw new NullPointerException("profile cannot be null");
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Remembers the size and the modification time of the class files of the
+     * {@link org.apache.xbean.finder.archive.FileArchive} directories so
+     * {@link AnnotationFinder#refresh()} only reads the classes added or modified since.
+     * The index of an {@link org.apache.xbean.finder.archive.IndexedArchive} directory
+     * is then not used, the directory is scanned to record its class files.
+     *
+     * @param incremental true to track the class files of the directories
+     * @return this
+     */
+    public ScanOptions incremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Executor getReaders() {
+        return readers;
+    }
+
+    public long getReadAhead() {
+        return readAhead;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public ScanCache getCache() {
+        return cache;
+    }
+
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    public boolean isStubs() {
+        return stubs;
+    }
+
+    public ScanProfile getProfile() {
+        return profile;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    public boolean isPipelined() {
+        return readers != null;
+    }
+
+    /**
+     * @return true if the scan reads all the infos of the classes, they can then be cached
+     */
+    boolean isComplete() {
+        return annotations == null && profile == ScanProfile.FULL;
+    }
+
+    ConstantPoolScanner getScanner() {
+        return scanner;
+    }
+}
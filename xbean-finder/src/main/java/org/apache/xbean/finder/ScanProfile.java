@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+/**
+ * How much of each class {@link AnnotationFinder} keeps while scanning, see {@link ScanOptions#profile(ScanProfile)}.
+ *
+ * @version $Rev$ $Date$
+ */
+public enum ScanProfile {
+    /**
+     * Only the classes with their annotations, parent and interfaces,
+     * the fields and methods are not visited.
+     */
+    CLASSES,
+
+    /**
+     * The classes plus the fields, methods and constructors having an annotation,
+     * parameter annotations are ignored.
+     */
+    ANNOTATED_MEMBERS,
+
+    /**
+     * Every member and parameter annotation, the historical behavior.
+     */
+    FULL
+}
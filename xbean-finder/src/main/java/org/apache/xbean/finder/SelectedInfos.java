@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+import org.apache.xbean.finder.AnnotationFinder.FieldInfo;
+import org.apache.xbean.finder.AnnotationFinder.Info;
+import org.apache.xbean.finder.AnnotationFinder.MethodInfo;
+import org.apache.xbean.finder.AnnotationFinder.ParameterInfo;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The annotation lists of a finder restricted to the infos of some classes, used by
+ * {@link AnnotationFinder#select(Iterable)}. A list of the finder is filtered the first
+ * time it is read rather than copied, so selecting costs what the selection is worth.
+ * <p/>
+ * The view is read only.
+ *
+ * @version $Rev$ $Date$
+ */
+final class SelectedInfos extends AbstractMap<String, List<Info>> {
+
+    private final Map<String, List<Info>> annotated;
+    private final Set<String> classes;
+    private final Set<String> annotations;
+    private final Map<String, List<Info>> filtered = new ConcurrentHashMap<String, List<Info>>();
+
+    /**
+     * @param annotated the annotation lists of the finder
+     * @param classes the selected classes
+     * @param annotations the annotations used by the infos of the selected classes
+     */
+    SelectedInfos(Map<String, List<Info>> annotated, Set<String> classes, Set<String> annotations) {
+        this.annotated = annotated;
+        this.classes = classes;
+        this.annotations = annotations;
+    }
+
+    @Override
+    public List<Info> get(Object key) {
+        if (!annotations.contains(key)) return null;
+
+        List<Info> infos = filtered.get(key);
+        if (infos == null) {
+            final List<Info> all = annotated.get(key);
+            if (all == null) return null;
+
+            infos = new ArrayList<Info>();
+            for (Info info : all) {
+                if (classes.contains(owner(info))) {
+                    infos.add(info);
+                }
+            }
+            filtered.put((String) key, infos);
+        }
+        return infos;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return annotations.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return annotations.size();
+    }
+
+    @Override
+    public Set<Entry<String, List<Info>>> entrySet() {
+        final Map<String, List<Info>> entries = new LinkedHashMap<String, List<Info>>();
+        for (String annotation : annotations) {
+            final List<Info> infos = get(annotation);
+            if (infos != null) {
+                entries.put(annotation, infos);
+            }
+        }
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+
+    /**
+     * @return the name of the class declaring the info, null for a package
+     */
+    private static String owner(Info info) {
+        if (info instanceof ClassInfo) return info.getName();
+        if (info instanceof MethodInfo) return ((MethodInfo) info).getDeclaringClass().getName();
+        if (info instanceof FieldInfo) return ((FieldInfo) info).getDeclaringClass().getName();
+        if (info instanceof ParameterInfo) return ((ParameterInfo) info).getDeclaringMethod().getDeclaringClass().getName();
+        return null;
+    }
+}
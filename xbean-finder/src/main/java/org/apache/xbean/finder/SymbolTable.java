@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.objectweb.asm.Type;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares the strings of the infos built while an archive is scanned.
+ * <p/>
+ * The super types, interfaces, annotations and member descriptors are repeated by most
+ * of the classes of an archive, the infos keep one instance of each of them and the
+ * conversions from the bytecode names are done once. The table can be used by
+ * concurrent parsing tasks and is dropped with the scan.
+ *
+ * @version $Rev$ $Date$
+ */
+final class SymbolTable {
+
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> javaNames = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> classNames = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @return the shared instance equal to this value
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+
+        final String existing = strings.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * @return the shared class name for an internal name, org/acme/Foo gives org.acme.Foo
+     */
+    public String javaName(String internalName) {
+        if (internalName == null) return null;
+
+        String name = javaNames.get(internalName);
+        if (name == null) {
+            name = intern(toJavaName(internalName));
+            javaNames.put(internalName, name);
+        }
+        return name;
+    }
+
+    /**
+     * @return the shared class name for a type descriptor, Lorg/acme/Foo; gives org.acme.Foo
+     */
+    public String className(String descriptor) {
+        String name = classNames.get(descriptor);
+        if (name == null) {
+            name = intern(toClassName(descriptor));
+            classNames.put(descriptor, name);
+        }
+        return name;
+    }
+
+    static String toJavaName(String internalName) {
+        return (internalName == null) ? null : internalName.replace('/', '.');
+    }
+
+    static String toClassName(String descriptor) {
+        final Type type = Type.getType(descriptor);
+        final String name = type.getClassName();
+        if (name == null) {
+            return type.getDescriptor(); // was already a class name
+        }
+        return name;
+    }
+}
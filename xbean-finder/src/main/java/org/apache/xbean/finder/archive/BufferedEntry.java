@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+
+/**
+ * An entry able to copy its bytecode into a buffer owned by the caller,
+ * the scanner can then reuse the same array for all the entries.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface BufferedEntry extends Archive.Entry {
+
+    /**
+     * @return the size of the bytecode in bytes
+     */
+    int getSize();
+
+    /**
+     * Copies the bytecode at the beginning of the buffer.
+     *
+     * @param buffer at least {@link #getSize()} long
+     */
+    void read(byte[] buffer) throws IOException;
+}
@@ -16,16 +16,24 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Supports JarArchive and FileArchive URLs
+ * <p/>
+ * The bytecode of a class of one of the archives is read from that archive, through its open jar
+ * or directory, the other classes (the JVM ones, the libraries of the parent loaders) from the loader.
  *
  * @version $Rev$ $Date$
  */
@@ -33,6 +41,8 @@ public class ClasspathArchive extends CompositeArchive {
 
     private final List<URL> urls = new ArrayList<URL>();
     private final ClassLoader loader;
+    // class name to the first archive declaring it, built on the first lookup
+    private volatile Map<String, Archive> index;
 
     public ClasspathArchive(ClassLoader loader, URL... urls) {
         this(loader, Arrays.asList(urls));
@@ -63,7 +73,7 @@ public class ClasspathArchive extends CompositeArchive {
 
         if (location.getProtocol().equals("jar")) {
 
-            return new JarArchive(loader, location);
+            return indexed(new JarArchive(loader, location));
 
         } else if (location.getProtocol().equals("file")) {
 
@@ -75,11 +85,11 @@ public class ClasspathArchive extends CompositeArchive {
                 JarURLConnection juc = (JarURLConnection) jarUrl.openConnection();
                 juc.getJarFile();
 
-                return new JarArchive(loader, jarUrl);
+                return indexed(new JarArchive(loader, jarUrl));
 
             } catch (IOException e) {
 
-                return new FileArchive(loader, location);
+                return indexed(new FileArchive(loader, location));
 
             }
         }
@@ -87,6 +97,47 @@ public class ClasspathArchive extends CompositeArchive {
         throw new UnsupportedOperationException("unsupported archive type: " + location);
     }
 
+    private static Archive indexed(JarArchive archive) {
+        try {
+            final URL index = archive.getResource(IndexedArchive.INDEX);
+            if (index != null) return new IndexedArchive(archive, index);
+        } catch (IOException e) {
+            // scan the jar
+        }
+        return archive;
+    }
+
+    /**
+     * A directory is recompiled in place by the IDEs, its index is ignored once a class file,
+     * or a directory for the deleted ones, is newer than it.
+     */
+    private static Archive indexed(FileArchive archive) {
+        final File index = new File(archive.getDir(), IndexedArchive.INDEX);
+        if (index.isFile() && !isModifiedSince(archive.getDir(), index.lastModified())) {
+            try {
+                return new IndexedArchive(archive, index.toURI().toURL());
+            } catch (MalformedURLException e) {
+                // scan the directory
+            }
+        }
+        return archive;
+    }
+
+    private static boolean isModifiedSince(File dir, long time) {
+        if (dir.lastModified() > time) return true;
+
+        final File[] files = dir.listFiles();
+        if (files == null) return false;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (isModifiedSince(file, time)) return true;
+            } else if (file.getName().endsWith(".class") && file.lastModified() > time) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static List<Archive> archives(ClassLoader loader, URL... urls) {
         return archives(loader, Arrays.asList(urls));
     }
@@ -105,12 +156,58 @@ public class ClasspathArchive extends CompositeArchive {
             className = className.replace('.', '/') + ".class";
         }
 
+        final String name = className.substring(0, className.length() - 6).replace('/', '.');
+        final Archive archive = index().get(name);
+        if (archive instanceof FileArchive) {
+            final InputStream bytecode = ((FileArchive) archive).openBytecode(name);
+            if (bytecode != null) return bytecode;
+        }
+        if (archive != null) return archive.getBytecode(name);
+
         URL resource = loader.getResource(className);
         if (resource != null) return resource.openStream();
 
         throw new ClassNotFoundException(className);
     }
 
+    private Map<String, Archive> index() {
+        if (index == null) {
+            synchronized (this) {
+                if (index == null) {
+                    final Map<String, Archive> map = new HashMap<String, Archive>();
+                    for (Archive archive : getArchives()) {
+                        if (archive instanceof IndexedArchive) {
+                            archive = ((IndexedArchive) archive).getArchive();
+                        }
+
+                        if (archive instanceof JarArchive) {
+                            ((JarArchive) archive).index(map);
+                        } else if (archive instanceof MappedJarArchive) {
+                            ((MappedJarArchive) archive).index(map);
+                        } else if (archive instanceof FileArchive) {
+                            for (Iterator<String> names = ((FileArchive) archive)._iterator(); names.hasNext(); ) {
+                                final String name = names.next();
+                                if (!map.containsKey(name)) map.put(name, archive);
+                            }
+                        }
+                    }
+                    index = map;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param entryName a jar entry, only the classes which aren't versioned entries are indexed
+     */
+    static void index(Map<String, Archive> index, String entryName, Archive archive) {
+        if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) return;
+
+        final String name = entryName.substring(0, entryName.length() - 6).replace('/', '.');
+        if (!index.containsKey(name)) index.put(name, archive);
+    }
+
     @Override
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         return loader.loadClass(className);
@@ -16,10 +16,13 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.Filter;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -27,7 +30,7 @@ import java.util.NoSuchElementException;
 /**
  * @version $Rev$ $Date$
  */
-public class CompositeArchive implements Archive {
+public class CompositeArchive implements FilterableArchive {
 
     private final List<Archive> archives = new ArrayList<Archive>();
 
@@ -41,6 +44,10 @@ public class CompositeArchive implements Archive {
         }
     }
 
+    public List<Archive> getArchives() {
+        return Collections.unmodifiableList(archives);
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         for (Archive archive : archives) {
             try {
@@ -65,27 +72,41 @@ public class CompositeArchive implements Archive {
 
     public Iterator<Entry> iterator() {
         if (archives.size() == 1) return archives.get(0).iterator();
-        return new CompositeIterator(archives);
+        return new CompositeIterator(archives, null);
+    }
+
+    /**
+     * The filter is pushed down to each archive.
+     */
+    public Iterator<Entry> iterator(Filter filter) {
+        return new CompositeIterator(archives, filter);
     }
 
     private static class CompositeIterator implements Iterator<Entry> {
 
         private Iterator<Archive> archives;
         private Iterator<Entry> current;
+        private final Filter filter;
 
-        private CompositeIterator(Iterable<Archive> archives) {
+        private CompositeIterator(Iterable<Archive> archives, Filter filter) {
             this.archives = archives.iterator();
+            this.filter = filter;
             if (this.archives.hasNext()) {
-                current = this.archives.next().iterator();
+                current = iterator(this.archives.next());
             }
         }
 
+        private Iterator<Entry> iterator(Archive archive) {
+            if (filter == null) return archive.iterator();
+            return new FilteredArchive(archive, filter).iterator();
+        }
+
         public boolean hasNext() {
             if (current == null) return false;
             if (current.hasNext()) return true;
             
             if (archives.hasNext()) {
-                current = archives.next().iterator();
+                current = iterator(archives.next());
                 return hasNext();
             }
             return false;
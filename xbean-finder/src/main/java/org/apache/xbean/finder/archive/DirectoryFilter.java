@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
+
+import java.util.Collection;
+
+/**
+ * Checks the directories of the jar entries against a filter, the entries of a directory
+ * are usually listed together so the directory is converted and checked once for all of them.
+ *
+ * @version $Rev$ $Date$
+ */
+final class DirectoryFilter {
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private final Filter filter;
+    private String directory;
+    private boolean accepted;
+
+    DirectoryFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * The multi-release entries are always accepted, they are needed to resolve the versioned classes.
+     *
+     * @param entryName a jar entry name as org/acme/Foo.class
+     * @return false if no class of the directory of this entry can be accepted
+     */
+    boolean accept(String entryName) {
+        if (entryName.startsWith(VERSIONS)) return true;
+
+        final int end = entryName.lastIndexOf('/') + 1;
+        if (directory == null || directory.length() != end || !entryName.startsWith(directory)) {
+            directory = entryName.substring(0, end);
+            accepted = Filters.acceptsAny(filter, directory.replace('/', '.'));
+        }
+        return accepted;
+    }
+
+    /**
+     * Adds the directory of a class entry, the multi-release entries are ignored.
+     */
+    static void addDirectory(Collection<String> directories, String entryName) {
+        if (!entryName.endsWith(".class") || entryName.startsWith(VERSIONS)) return;
+        directories.add(entryName.substring(0, entryName.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * @return false if no class of these directories can be accepted
+     */
+    static boolean acceptsAny(Filter filter, Collection<String> directories) {
+        for (String directory : directories) {
+            if (Filters.acceptsAny(filter, directory.replace('/', '.'))) return true;
+        }
+        return false;
+    }
+}
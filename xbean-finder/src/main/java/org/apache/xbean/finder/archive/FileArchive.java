@@ -16,6 +16,9 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
+
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -24,13 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  * @version $Rev$ $Date$
  */
-public class FileArchive implements Archive {
+public class FileArchive implements FilterableArchive {
 
     private final ClassLoader loader;
     private final String basePackage;
@@ -93,6 +97,65 @@ public class FileArchive implements Archive {
     }
 
 
+    /**
+     * Reads the class straight from the directory, without asking the loader.
+     *
+     * @return null if the class isn't a file of this directory, or if the directory is a multi-release one
+     */
+    InputStream openBytecode(String className) throws IOException {
+        final File file = getClassFile(className);
+        if (file == null || !file.isFile()) return null;
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * @return the file of the class in this directory, it may not exist, null if the class
+     * isn't in the base package or if the directory is a multi-release one
+     */
+    public File getClassFile(String className) {
+        if (mjar.isMjar()) return null;
+
+        return baseClassFile(className);
+    }
+
+    /**
+     * The files the class is read from: the class file of the directory and, in a multi-release
+     * directory, the class file of the running Java version listed with the classes.
+     *
+     * @return the files of the class, they may not exist, empty if the class isn't in the base package
+     */
+    public List<File> getClassFiles(String className) {
+        final File file = baseClassFile(className);
+        if (file == null) return Collections.emptyList();
+        if (!mjar.isMjar()) return Collections.singletonList(file);
+
+        final List<File> files = new ArrayList<File>(2);
+        files.add(file);
+        final String resource = mjar.getClasses().get(className);
+        if (resource != null) {
+            final File versioned = baseClassFile(resource.substring(0, resource.length() - ".class".length()));
+            if (versioned != null) {
+                files.add(versioned);
+            }
+        }
+        return files;
+    }
+
+    private File baseClassFile(String className) {
+        final String base = (basePackage.length() > 0) ? (basePackage + ".") : basePackage;
+        if (!className.startsWith(base)) return null;
+
+        return new File(dir, className.substring(base.length()).replace('.', File.separatorChar) + ".class");
+    }
+
+    /**
+     * Forgets the classes listed so far, the next iteration lists the directory again.
+     */
+    public void refresh() {
+        list = null;
+        mjar.getClasses().clear();
+    }
+
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         // we assume the loader supports mjar if needed, do we want to wrap it to enforce it?
         // probably not otherwise runtime will be weird and unexpected no?
@@ -103,9 +166,38 @@ public class FileArchive implements Archive {
         return new ArchiveIterator(this, _iterator());
     }
 
+    /**
+     * The directories whose package can't be accepted aren't listed,
+     * the names of an already listed archive are just filtered.
+     */
+    public Iterator<Entry> iterator(Filter filter) {
+        final List<String> names = new ArrayList<String>();
+        if (list != null) {
+            for (String name : list) {
+                if (filter.accept(name)) names.add(name);
+            }
+        } else {
+            final String packageName = (basePackage.length() > 0) ? (basePackage + ".") : basePackage;
+            if (!Filters.acceptsAny(filter, packageName)) return Collections.<Entry>emptyList().iterator();
+
+            readManifest();
+            if (dir.isDirectory()) {
+                scanDir(dir, names, packageName, filter);
+            }
+        }
+        return new ArchiveIterator(this, names.iterator());
+    }
+
     public Iterator<String> _iterator() {
         if (list != null) return list.iterator();
 
+        readManifest();
+
+        list = file(dir);
+        return list.iterator();
+    }
+
+    private void readManifest() {
         final File manifest = new File(dir, "META-INF/MANIFEST.MF");
         if (manifest.exists()) {
             InputStream is = null;
@@ -124,20 +216,17 @@ public class FileArchive implements Archive {
                 }
             }
         }
-
-        list = file(dir);
-        return list.iterator();
     }
 
     private List<String> file(File dir) {
         List<String> classNames = new ArrayList<String>();
         if (dir.isDirectory()) {
-            scanDir(dir, classNames, (basePackage.length() > 0) ? (basePackage + ".") : basePackage);
+            scanDir(dir, classNames, (basePackage.length() > 0) ? (basePackage + ".") : basePackage, null);
         }
         return classNames;
     }
 
-    private void scanDir(File dir, List<String> classNames, String packageName) {
+    private void scanDir(File dir, List<String> classNames, String packageName, Filter filter) {
         File[] files = dir.listFiles();
         // using /tmp/. as dir we can get null
         if (files == null) {
@@ -145,7 +234,11 @@ public class FileArchive implements Archive {
         }
         for (File file : files) {
             if (file.isDirectory()) {
-                scanDir(file, classNames, packageName + file.getName() + ".");
+                final String subPackage = packageName + file.getName() + ".";
+                // META-INF holds the multi-release classes, always visit it
+                if (filter != null && !subPackage.startsWith("META-INF.") && !Filters.acceptsAny(filter, subPackage)) continue;
+
+                scanDir(file, classNames, subPackage, filter);
             } else if (file.getName().endsWith(".class")) {
                 String name = file.getName();
                 name = name.substring(0, name.length() - 6);
@@ -156,6 +249,7 @@ public class FileArchive implements Archive {
                         continue;
                     }
                 }
+                if (filter != null && !filter.accept(packageName + name)) continue;
                 classNames.add(packageName + name);
             }
         }
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.filter.Filter;
+
+import java.util.Iterator;
+
+/**
+ * An archive able to apply a {@link Filter} while it lists its classes, {@link FilteredArchive}
+ * pushes its filter down to such an archive instead of filtering the built entries.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface FilterableArchive extends Archive {
+
+    /**
+     * The directories, packages or whole archive the filter can't accept are skipped,
+     * see {@link org.apache.xbean.finder.filter.PruningFilter}.
+     *
+     * @return the entries whose name is accepted by the filter
+     */
+    Iterator<Entry> iterator(Filter filter);
+}
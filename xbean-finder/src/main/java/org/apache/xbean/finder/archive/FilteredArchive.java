@@ -46,6 +46,9 @@ public class FilteredArchive implements Archive {
     }
 
     public Iterator<Entry> iterator() {
+        if (archive instanceof FilterableArchive) {
+            return ((FilterableArchive) archive).iterator(filter);
+        }
         return new FilteredIterator(archive.iterator());
     }
 
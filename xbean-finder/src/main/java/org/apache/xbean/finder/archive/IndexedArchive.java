@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+
+/**
+ * An archive shipping a pre-computed index of its classes, see
+ * {@link org.apache.xbean.finder.FinderIndex}.
+ * <p/>
+ * The AnnotationFinder reads the index instead of iterating the entries,
+ * the archive itself is still used to load the classes and their bytecode.
+ *
+ * @version $Rev$ $Date$
+ */
+public class IndexedArchive implements Archive {
+
+    public static final String INDEX = "META-INF/xbean/finder.idx";
+
+    private final Archive archive;
+    private final URL index;
+
+    public IndexedArchive(Archive archive, URL index) {
+        this.archive = archive;
+        this.index = index;
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    public URL getIndex() {
+        return index;
+    }
+
+    public InputStream openIndex() throws IOException {
+        // don't keep the jar open in the URL cache once the index is read
+        final URLConnection connection = index.openConnection();
+        connection.setUseCaches(false);
+        return connection.getInputStream();
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return archive.getBytecode(className);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return archive.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return archive.iterator();
+    }
+}
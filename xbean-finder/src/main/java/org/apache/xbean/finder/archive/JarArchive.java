@@ -16,6 +16,9 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.Filter;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -24,9 +27,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -35,12 +41,13 @@ import java.util.zip.ZipEntry;
 /**
  * @version $Rev$ $Date$
  */
-public class JarArchive implements Archive {
+public class JarArchive implements FilterableArchive {
 
     private final ClassLoader loader;
     private final URL url;
     private final JarFile jar;
     private final MJarSupport mjar = new MJarSupport();
+    private volatile Set<String> directories;
 
     public JarArchive(ClassLoader loader, URL url) {
 //        if (!"jar".equals(url.getProtocol())) throw new IllegalArgumentException("not a jar url: " + url);
@@ -65,6 +72,18 @@ public class JarArchive implements Archive {
         return url;
     }
 
+    public File getFile() {
+        return new File(jar.getName());
+    }
+
+    /**
+     * @return the url of the entry or null if the jar doesn't contain it
+     */
+    URL getResource(String name) throws IOException {
+        if (jar.getEntry(name) == null) return null;
+        return new URL("jar:" + getFile().toURI().toURL() + "!/" + name);
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         int pos = className.indexOf("<");
         if (pos > -1) {
@@ -99,15 +118,50 @@ public class JarArchive implements Archive {
     }
 
     public Iterator<Entry> iterator() {
-        return new JarIterator();
+        return new JarIterator(null);
+    }
+
+    public Iterator<Entry> iterator(Filter filter) {
+        if (!DirectoryFilter.acceptsAny(filter, directories())) {
+            return Collections.<Entry>emptyList().iterator();
+        }
+        return new JarIterator(filter);
+    }
+
+    /**
+     * Adds the names of the classes of this jar to the index, unless another archive already declares them.
+     */
+    void index(Map<String, Archive> index) {
+        for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+            ClasspathArchive.index(index, entries.nextElement().getName(), this);
+        }
+    }
+
+    /**
+     * The directories holding classes, read once from the central directory of the jar.
+     */
+    private Set<String> directories() {
+        if (directories == null) {
+            final Set<String> set = new HashSet<String>();
+            for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                DirectoryFilter.addDirectory(set, entries.nextElement().getName());
+            }
+            directories = set;
+        }
+        return directories;
     }
 
     private class JarIterator implements Iterator<Entry> {
 
         private final Iterator<JarEntry> stream;
+        private final Filter filter;
+        private final DirectoryFilter directoryFilter;
         private Entry next;
 
-        private JarIterator() {
+        private JarIterator(Filter filter) {
+            this.filter = filter;
+            this.directoryFilter = filter == null ? null : new DirectoryFilter(filter);
+
             final Enumeration<JarEntry> entries = jar.entries();
             try {
                 final Manifest manifest = jar.getManifest();
@@ -153,6 +207,9 @@ public class JarArchive implements Archive {
                 if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")/*todo*/) {
                     continue;
                 }
+                if (directoryFilter != null && !directoryFilter.accept(entryName)) {
+                    continue;
+                }
 
                 String className = entryName;
                 if (entryName.endsWith(".class")) {
@@ -169,7 +226,12 @@ public class JarArchive implements Archive {
                     }
                 }
 
-                next = new ClassEntry(entry, className.replace('/', '.'));
+                final String name = className.replace('/', '.');
+                if (filter != null && !filter.accept(name)) {
+                    continue;
+                }
+
+                next = new ClassEntry(entry, name);
                 return true;
             }
             return false;
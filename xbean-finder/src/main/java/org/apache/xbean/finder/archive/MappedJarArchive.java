@@ -0,0 +1,497 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.filter.Filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Jar archive reading the file through a memory mapping instead of a {@link java.util.jar.JarFile}.
+ * <p/>
+ * The central directory is parsed once when the archive is created and the entries are
+ * inflated straight into the buffer of the caller (see {@link BufferedEntry}), with pooled
+ * inflaters, so scanning a jar doesn't create a stream per class.
+ * Zip64 jars are not supported, use {@link JarArchive} for them.
+ * <p/>
+ * The jar stays mapped, and locked on Windows, until {@link #close()} is called or the archive is garbage collected.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchive implements FilterableArchive, Closeable {
+
+    private static final int END_HEADER = 0x06054b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // the inflaters which don't fit back in the pool are ended
+    private static final Queue<Inflater> INFLATERS = new ArrayBlockingQueue<Inflater>(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final ThreadLocal<byte[]> COMPRESSED = new ThreadLocal<byte[]>();
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final File file;
+    private volatile ByteBuffer buffer;
+    private final Map<String, MappedEntry> entries = new LinkedHashMap<String, MappedEntry>();
+    private final MJarSupport mjar = new MJarSupport();
+    private volatile Set<String> directories;
+
+    public MappedJarArchive(ClassLoader loader, URL url) {
+        try {
+            this.loader = loader;
+            this.url = url;
+            URL u = url;
+
+            String jarPath = url.getFile();
+            if (jarPath.contains("!")) {
+                jarPath = jarPath.substring(0, jarPath.indexOf("!"));
+                u = new URL(jarPath);
+            }
+            file = new File(FileArchive.decode(u.getFile())); // no more an url
+
+            buffer = map(file);
+            readCentralDirectory();
+            readManifest();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (!className.endsWith(".class")) {
+            className = className.replace('.', '/') + ".class";
+        }
+
+        if (mjar.isMjar()) {
+            final String resource = mjar.getClasses().get(className);
+            if (resource != null) {
+                className = resource;
+            }
+        }
+
+        final MappedEntry entry = entries.get(className);
+        if (entry == null) throw new ClassNotFoundException(className);
+
+        return new ByteArrayInputStream(entry.read());
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        // assume the loader knows how to handle mjar release if activated
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return new MappedIterator(null);
+    }
+
+    public Iterator<Entry> iterator(Filter filter) {
+        if (!DirectoryFilter.acceptsAny(filter, directories())) {
+            return Collections.<Entry>emptyList().iterator();
+        }
+        return new MappedIterator(filter);
+    }
+
+    /**
+     * Adds the names of the classes of this jar to the index, unless another archive already declares them.
+     */
+    void index(Map<String, Archive> index) {
+        for (String name : entries.keySet()) {
+            ClasspathArchive.index(index, name, this);
+        }
+    }
+
+    private Set<String> directories() {
+        if (directories == null) {
+            final Set<String> set = new HashSet<String>();
+            for (String name : entries.keySet()) {
+                DirectoryFilter.addDirectory(set, name);
+            }
+            directories = set;
+        }
+        return directories;
+    }
+
+    /**
+     * Releases the mapping of the jar, the archive can't be read anymore. It must not be
+     * called while the archive is still read by another thread.
+     */
+    public void close() {
+        final ByteBuffer mapped = buffer;
+        buffer = null;
+        if (mapped != null) {
+            unmap(mapped);
+        }
+    }
+
+    /**
+     * The mapping is otherwise only released once the buffer is garbage collected,
+     * use the cleaner of the buffer when the JVM gives access to it.
+     */
+    private static void unmap(ByteBuffer mapped) {
+        try {
+            final Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null) {
+                final Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // no-op, released by the garbage collector
+        }
+    }
+
+    private ByteBuffer buffer() throws ZipException {
+        final ByteBuffer mapped = buffer;
+        if (mapped == null) throw new ZipException("Archive closed: " + file);
+        return mapped;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) throw new ZipException("Jar too large to be mapped: " + file);
+
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void readCentralDirectory() throws IOException {
+        final int end = findEndHeader();
+        final int total = buffer.getShort(end + 10) & 0xFFFF;
+        final long offset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (total == 0xFFFF || offset == 0xFFFFFFFFL) throw new ZipException("Zip64 jars are not supported: " + file);
+
+        int position = (int) offset;
+        for (int i = 0; i < total; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER) throw new ZipException("Invalid central directory in " + file);
+
+            final int flags = buffer.getShort(position + 8) & 0xFFFF;
+            final int method = buffer.getShort(position + 10) & 0xFFFF;
+            final long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+            final long size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+            final int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            final int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            final int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            final long localOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+                throw new ZipException("Zip64 jars are not supported: " + file);
+            }
+
+            final byte[] name = new byte[nameLength];
+            copy(buffer, position + 46, name, nameLength);
+            final String entryName = new String(name, (flags & 0x800) != 0 ? "UTF-8" : "ISO-8859-1");
+
+            entries.put(entryName, new MappedEntry(entryName, method, (int) localOffset, (int) compressedSize, (int) size));
+
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private int findEndHeader() throws ZipException {
+        // the end header is 22 bytes long and followed by a comment of at most 64k
+        final int last = buffer.limit() - 22;
+        final int first = Math.max(0, last - 0xFFFF);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_HEADER) {
+                return position;
+            }
+        }
+        throw new ZipException("Not a jar file: " + file);
+    }
+
+    private void readManifest() throws IOException {
+        final MappedEntry manifest = entries.get("META-INF/MANIFEST.MF");
+        if (manifest == null) return;
+
+        mjar.load(new Manifest(new ByteArrayInputStream(manifest.read())));
+        if (mjar.isMjar()) {
+            for (String name : entries.keySet()) {
+                if (name.startsWith("META-INF/versions/") && name.endsWith(".class")) {
+                    mjar.visit(name);
+                }
+            }
+        }
+    }
+
+    private static void copy(ByteBuffer from, int position, byte[] to, int length) {
+        // absolute bulk gets don't exist, work on a duplicate to stay thread safe
+        final ByteBuffer duplicate = from.duplicate();
+        duplicate.position(position);
+        duplicate.get(to, 0, length);
+    }
+
+    private static byte[] compressed(int size) {
+        byte[] bytes = COMPRESSED.get();
+        if (bytes == null || bytes.length < size) {
+            bytes = new byte[Math.max(size, 8192)];
+            COMPRESSED.set(bytes);
+        }
+        return bytes;
+    }
+
+    private static Inflater inflater() {
+        final Inflater inflater = INFLATERS.poll();
+        if (inflater != null) return inflater;
+        return new Inflater(true);
+    }
+
+    private class MappedEntry {
+        private final String name;
+        private final int method;
+        private final int localOffset;
+        private final int compressedSize;
+        private final int size;
+
+        private MappedEntry(String name, int method, int localOffset, int compressedSize, int size) {
+            this.name = name;
+            this.method = method;
+            this.localOffset = localOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        private boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        private byte[] read() throws IOException {
+            final byte[] bytes = new byte[size];
+            read(bytes);
+            return bytes;
+        }
+
+        private void read(byte[] to) throws IOException {
+            final ByteBuffer mapped = buffer();
+            if (mapped.getInt(localOffset) != LOCAL_HEADER) throw new ZipException("Invalid local header for " + name);
+
+            final int nameLength = mapped.getShort(localOffset + 26) & 0xFFFF;
+            final int extraLength = mapped.getShort(localOffset + 28) & 0xFFFF;
+            final int data = localOffset + 30 + nameLength + extraLength;
+
+            if (method == STORED) {
+                copy(mapped, data, to, size);
+            } else if (method == DEFLATED) {
+                final byte[] input = compressed(compressedSize);
+                copy(mapped, data, input, compressedSize);
+                inflate(input, to);
+            } else {
+                throw new ZipException("Unsupported compression method " + method + " for " + name);
+            }
+        }
+
+        private void inflate(byte[] input, byte[] to) throws ZipException {
+            final Inflater inflater = inflater();
+            try {
+                inflater.setInput(input, 0, compressedSize);
+
+                int read = 0;
+                while (read < size) {
+                    final int n = inflater.inflate(to, read, size - read);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != size) throw new ZipException("Truncated entry " + name);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflated data for " + name + ": " + e.getMessage());
+            } finally {
+                inflater.reset();
+                if (!INFLATERS.offer(inflater)) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    private class MappedIterator implements Iterator<Entry> {
+
+        private final Iterator<MappedEntry> stream;
+        private final Filter filter;
+        private final DirectoryFilter directoryFilter;
+        private Entry next;
+
+        private MappedIterator(Filter filter) {
+            this.filter = filter;
+            this.directoryFilter = filter == null ? null : new DirectoryFilter(filter);
+
+            if (mjar.isMjar()) { // sort it to ensure we browse META-INF/versions first
+                final List<MappedEntry> list = new ArrayList<MappedEntry>(entries.values());
+                Collections.sort(list, new Comparator<MappedEntry>() {
+                    public int compare(MappedEntry o1, MappedEntry o2) {
+                        final String n2 = o2.name;
+                        final String n1 = o1.name;
+                        final boolean n1v = n1.startsWith("META-INF/versions/");
+                        final boolean n2v = n2.startsWith("META-INF/versions/");
+                        if (n1v && n2v) {
+                            return n1.compareTo(n2);
+                        }
+                        if (n1v) {
+                            return -1;
+                        }
+                        if (n2v) {
+                            return 1;
+                        }
+                        return n1.compareTo(n2);
+                    }
+                });
+                stream = list.iterator();
+            } else {
+                stream = entries.values().iterator();
+            }
+        }
+
+        private boolean advance() {
+            if (next != null) {
+                return true;
+            }
+            while (stream.hasNext()) {
+                final MappedEntry entry = stream.next();
+                final String entryName = entry.name;
+                if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")/*todo*/) {
+                    continue;
+                }
+                if (directoryFilter != null && !directoryFilter.accept(entryName)) {
+                    continue;
+                }
+
+                final String className = entryName.substring(0, entryName.length() - 6);
+                if (className.contains(".")) {
+                    continue;
+                }
+
+                if (entryName.startsWith("META-INF/versions/") && mjar.isMjar()) {
+                    continue; // already visited when the manifest was read
+                }
+
+                final String name = className.replace('/', '.');
+                if (filter != null && !filter.accept(name)) {
+                    continue;
+                }
+
+                next = new ClassEntry(entry, name);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    private class ClassEntry implements BufferedEntry {
+        private final String name;
+        private final MappedEntry entry;
+
+        private ClassEntry(MappedEntry entry, String name) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            return new ByteArrayInputStream(resolve().read());
+        }
+
+        public int getSize() {
+            return resolve().size;
+        }
+
+        public void read(byte[] buffer) throws IOException {
+            resolve().read(buffer);
+        }
+
+        private MappedEntry resolve() {
+            if (mjar.isMjar()) {
+                final String resource = mjar.getClasses().get(entry.name);
+                if (resource != null) {
+                    final MappedEntry versioned = entries.get(resource);
+                    if (versioned != null) {
+                        return versioned;
+                    }
+                }
+            }
+            return entry;
+        }
+    }
+}
@@ -19,7 +19,7 @@ package org.apache.xbean.finder.filter;
 /**
  * @version $Rev$ $Date$
  */
-public class ClassFilter implements Filter {
+public class ClassFilter implements PruningFilter {
 
     private final String name;
 
@@ -36,6 +36,14 @@ public class ClassFilter implements Filter {
         return this.name.equals(name);
     }
 
+    public boolean acceptsAny(String prefix) {
+        return name.startsWith(prefix);
+    }
+
+    public boolean acceptsAll(String prefix) {
+        return false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -20,7 +20,7 @@ package org.apache.xbean.finder.filter;
  * First, all Exclude directives are evaluated; if any match, the className is denied unless it also matches an Include directive.
  * Any classNames which do not match any Include or Exclude directives are permitted.
  */
-public class ExcludeIncludeFilter implements Filter {
+public class ExcludeIncludeFilter implements PruningFilter {
 
     private final Filter include;
     private final Filter exclude;
@@ -35,6 +35,14 @@ public class ExcludeIncludeFilter implements Filter {
         return true;
     }
 
+    public boolean acceptsAny(String prefix) {
+        return !Filters.acceptsAll(exclude, prefix) || Filters.acceptsAny(include, prefix);
+    }
+
+    public boolean acceptsAll(String prefix) {
+        return !Filters.acceptsAny(exclude, prefix) || Filters.acceptsAll(include, prefix);
+    }
+
     @Override
     public String toString() {
         return "Exclude." + exclude +
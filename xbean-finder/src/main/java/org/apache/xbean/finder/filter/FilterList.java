@@ -23,7 +23,7 @@ import java.util.List;
 /**
  * @version $Rev$ $Date$
  */
-public class FilterList implements Filter {
+public class FilterList implements PruningFilter {
 
     private final List<Filter> filters = new ArrayList<Filter>();
 
@@ -45,6 +45,22 @@ public class FilterList implements Filter {
         return false;
     }
 
+    public boolean acceptsAny(String prefix) {
+        for (Filter filter : filters) {
+            if (Filters.acceptsAny(filter, prefix)) return true;
+        }
+
+        return false;
+    }
+
+    public boolean acceptsAll(String prefix) {
+        for (Filter filter : filters) {
+            if (Filters.acceptsAll(filter, prefix)) return true;
+        }
+
+        return false;
+    }
+
     public List<Filter> getFilters() {
         return filters;
     }
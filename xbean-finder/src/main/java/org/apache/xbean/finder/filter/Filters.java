@@ -18,10 +18,15 @@ package org.apache.xbean.finder.filter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * @version $Rev$ $Date$
@@ -33,6 +38,8 @@ public class Filters {
         }
     };
 
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+
     public static Filter packages(String... packages) {
         List<Filter> filters = new ArrayList<Filter>();
         for (String s : packages) {
@@ -109,7 +116,75 @@ public class Filters {
 
         if (unwrapped.size() == 0) return NONE;
         if (unwrapped.size() == 1) return unwrapped.iterator().next();
-        return new FilterList(unwrapped);
+        return compile(unwrapped);
+    }
+
+    /**
+     * The prefix, package and class filters are merged in a {@link TrieFilter}
+     * and the patterns in a single {@link Pattern}, so a name is checked once
+     * against each of them instead of once per filter.
+     */
+    private static Filter compile(Set<Filter> unwrapped) {
+        final List<Filter> names = new ArrayList<Filter>();
+        final Map<Integer, List<PatternFilter>> patterns = new LinkedHashMap<Integer, List<PatternFilter>>();
+        final List<Filter> compiled = new ArrayList<Filter>();
+
+        for (Filter filter : unwrapped) {
+            if (TrieFilter.supports(filter)) {
+                names.add(filter);
+            } else if (filter instanceof PatternFilter && isCombinable(((PatternFilter) filter).getPattern())) {
+                final Integer flags = ((PatternFilter) filter).getPattern().flags();
+                List<PatternFilter> list = patterns.get(flags);
+                if (list == null) {
+                    list = new ArrayList<PatternFilter>();
+                    patterns.put(flags, list);
+                }
+                list.add((PatternFilter) filter);
+            } else {
+                compiled.add(filter);
+            }
+        }
+
+        if (names.size() > 1) {
+            compiled.add(new TrieFilter(names));
+        } else {
+            compiled.addAll(names);
+        }
+
+        for (Map.Entry<Integer, List<PatternFilter>> entry : patterns.entrySet()) {
+            compiled.addAll(combine(entry.getValue(), entry.getKey()));
+        }
+
+        if (compiled.size() == 1) return compiled.get(0);
+        return new FilterList(compiled);
+    }
+
+    private static List<? extends Filter> combine(List<PatternFilter> filters, int flags) {
+        if (filters.size() == 1) return filters;
+
+        final StringBuilder expression = new StringBuilder();
+        for (PatternFilter filter : filters) {
+            if (expression.length() > 0) expression.append('|');
+            expression.append("(?:").append(filter.getPattern().pattern()).append(')');
+        }
+
+        try {
+            return Collections.singletonList(new PatternFilter(Pattern.compile(expression.toString(), flags)));
+        } catch (PatternSyntaxException e) {
+            return filters;
+        }
+    }
+
+    /**
+     * A pattern can be an alternative of a larger one unless it depends on its own groups,
+     * on inline flags or on quoting which could leak in the next alternative.
+     */
+    private static boolean isCombinable(Pattern pattern) {
+        final String expression = pattern.pattern();
+        return !expression.contains("\\Q")
+                && !expression.contains("\\k<")
+                && !BACK_REFERENCE.matcher(expression).find()
+                && !expression.replace("(?:", "").contains("(?");
     }
 
     /**
@@ -137,13 +212,33 @@ public class Filters {
             if (filter instanceof FilterList) {
                 FilterList filterList = (FilterList) filter;
                 unwrap(filterList.getFilters(), unwrapped);
+            } else if (filter instanceof TrieFilter) {
+                unwrap(((TrieFilter) filter).getFilters(), unwrapped);
             } else {
                 unwrapped.add(filter);
             }
         }
     }
 
-    private static final class NegativeFilter implements Filter {
+    /**
+     * @return false only if the filter can't accept any name starting with the prefix
+     * @see PruningFilter#acceptsAny(String)
+     */
+    public static boolean acceptsAny(Filter filter, String prefix) {
+        if (filter instanceof PruningFilter) return ((PruningFilter) filter).acceptsAny(prefix);
+        return filter != NONE;
+    }
+
+    /**
+     * @return true only if the filter accepts all the names starting with the prefix
+     * @see PruningFilter#acceptsAll(String)
+     */
+    public static boolean acceptsAll(Filter filter, String prefix) {
+        if (filter instanceof PruningFilter) return ((PruningFilter) filter).acceptsAll(prefix);
+        return false;
+    }
+
+    private static final class NegativeFilter implements PruningFilter {
         private final Filter filter;
 
         public NegativeFilter(Filter filter) {
@@ -154,6 +249,14 @@ public class Filters {
             return !filter.accept(name);
         }
 
+        public boolean acceptsAny(String prefix) {
+            return !Filters.acceptsAll(filter, prefix);
+        }
+
+        public boolean acceptsAll(String prefix) {
+            return !Filters.acceptsAny(filter, prefix);
+        }
+
         public Filter getFilter() {
             return filter;
         }
@@ -21,7 +21,7 @@ package org.apache.xbean.finder.filter;
  * Next, all Exclude directives are evaluated. If any matches, the className is rejected.
  * Last, any classNames which do not match an Include or a Exclude directive are denied by default.
  */
-public class IncludeExcludeFilter implements Filter {
+public class IncludeExcludeFilter implements PruningFilter {
 
     private Filter include;
     private Filter exclude;
@@ -36,6 +36,14 @@ public class IncludeExcludeFilter implements Filter {
         return false;
     }
 
+    public boolean acceptsAny(String prefix) {
+        return Filters.acceptsAny(include, prefix) && !Filters.acceptsAll(exclude, prefix);
+    }
+
+    public boolean acceptsAll(String prefix) {
+        return Filters.acceptsAll(include, prefix) && !Filters.acceptsAny(exclude, prefix);
+    }
+
     @Override
     public String toString() {
         return "Include." + include +
@@ -19,7 +19,7 @@ package org.apache.xbean.finder.filter;
 /**
  * @version $Rev$ $Date$
  */
-public class PackageFilter implements Filter {
+public class PackageFilter implements PruningFilter {
 
     private final String packageName;
 
@@ -37,6 +37,14 @@ public class PackageFilter implements Filter {
         return name.startsWith(packageName);
     }
 
+    public boolean acceptsAny(String prefix) {
+        return packageName.startsWith(prefix) || prefix.startsWith(packageName);
+    }
+
+    public boolean acceptsAll(String prefix) {
+        return prefix.startsWith(packageName);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
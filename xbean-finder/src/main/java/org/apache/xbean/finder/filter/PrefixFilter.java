@@ -19,7 +19,7 @@ package org.apache.xbean.finder.filter;
 /**
  * @version $Rev$ $Date$
  */
-public class PrefixFilter implements Filter {
+public class PrefixFilter implements PruningFilter {
 
     private final String prefix;
 
@@ -36,6 +36,14 @@ public class PrefixFilter implements Filter {
         return name.startsWith(prefix);
     }
 
+    public boolean acceptsAny(String prefix) {
+        return this.prefix.startsWith(prefix) || prefix.startsWith(this.prefix);
+    }
+
+    public boolean acceptsAll(String prefix) {
+        return prefix.startsWith(this.prefix);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
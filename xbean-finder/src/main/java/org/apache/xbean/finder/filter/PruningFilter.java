@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+/**
+ * A filter able to answer for a whole package, the archives use it
+ * to skip the directories or jars none of their classes would pass.
+ * <p/>
+ * Both methods can be conservative, see {@link Filters#acceptsAny(Filter, String)}
+ * and {@link Filters#acceptsAll(Filter, String)} for the other filters.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface PruningFilter extends Filter {
+
+    /**
+     * @param prefix a package name followed by a dot, or an empty string
+     * @return false only if no name starting with the prefix can be accepted
+     */
+    boolean acceptsAny(String prefix);
+
+    /**
+     * @param prefix a package name followed by a dot, or an empty string
+     * @return true only if all the names starting with the prefix are accepted
+     */
+    boolean acceptsAll(String prefix);
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accepts the same names as a list of {@link PrefixFilter}, {@link PackageFilter} and {@link ClassFilter}
+ * but matches them all at once: the prefixes and class names are stored in a trie walked
+ * character by character, the cost of a match depends on the name, not on the number of filters.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TrieFilter implements PruningFilter {
+
+    private final List<Filter> filters = new ArrayList<Filter>();
+    private final Node root = new Node();
+
+    public TrieFilter(Iterable<? extends Filter> filters) {
+        for (Filter filter : filters) {
+            if (filter instanceof PrefixFilter) {
+                root.add(((PrefixFilter) filter).getPrefix(), 0).prefix = true;
+            } else if (filter instanceof PackageFilter) {
+                root.add(((PackageFilter) filter).getPackageName(), 0).prefix = true;
+            } else if (filter instanceof ClassFilter) {
+                root.add(((ClassFilter) filter).getName(), 0).name = true;
+            } else {
+                throw new IllegalArgumentException("Unsupported filter " + filter);
+            }
+            this.filters.add(filter);
+        }
+    }
+
+    /**
+     * Tells if the filter can be part of a {@link TrieFilter}
+     */
+    public static boolean supports(Filter filter) {
+        return filter instanceof PrefixFilter || filter instanceof PackageFilter || filter instanceof ClassFilter;
+    }
+
+    public boolean accept(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            if (node.prefix) return true;
+
+            node = node.get(name.charAt(i));
+            if (node == null) return false;
+        }
+        return node.prefix || node.name;
+    }
+
+    public boolean acceptsAny(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (node.prefix) return true;
+
+            node = node.get(prefix.charAt(i));
+            if (node == null) return false;
+        }
+        return true;
+    }
+
+    public boolean acceptsAll(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (node.prefix) return true;
+
+            node = node.get(prefix.charAt(i));
+            if (node == null) return false;
+        }
+        return node.prefix;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public String toString() {
+        return "TrieFilter{" +
+                "filters=" + filters +
+                '}';
+    }
+
+    private static final class Node {
+        // sorted for a binary search
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        // a filter accepts all the names starting here
+        private boolean prefix;
+        // a filter accepts the name ending here
+        private boolean name;
+
+        private Node get(char c) {
+            final int index = search(c);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node add(String value, int position) {
+            if (position == value.length()) return this;
+
+            final char c = value.charAt(position);
+            int index = search(c);
+            if (index < 0) {
+                index = -index - 1;
+
+                final char[] keys = new char[this.keys.length + 1];
+                final Node[] children = new Node[this.children.length + 1];
+                System.arraycopy(this.keys, 0, keys, 0, index);
+                System.arraycopy(this.children, 0, children, 0, index);
+                System.arraycopy(this.keys, index, keys, index + 1, this.keys.length - index);
+                System.arraycopy(this.children, index, children, index + 1, this.children.length - index);
+                keys[index] = c;
+                children[index] = new Node();
+
+                this.keys = keys;
+                this.children = children;
+            }
+            return children[index].add(value, position + 1);
+        }
+
+        private int search(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                if (keys[middle] < c) {
+                    low = middle + 1;
+                } else if (keys[middle] > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -91,7 +91,20 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public boolean remove(Object o) {
-        throw new UnsupportedOperationException("remove");
+        Entry<E> previous = null;
+        for (Entry<E> current : entries()) {
+            if (o == null ? current.value == null : o.equals(current.value)) {
+                if (previous == null) {
+                    this.entry = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                size--;
+                return true;
+            }
+            previous = current;
+        }
+        return false;
     }
 
     public boolean containsAll(Collection<?> c) {
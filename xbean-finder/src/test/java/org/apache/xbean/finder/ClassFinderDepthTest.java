@@ -23,7 +23,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @version $Rev$ $Date$
@@ -56,6 +60,9 @@ public class ClassFinderDepthTest extends TestCase {
     public static class Crimson extends Red {
     }
 
+    public static class Teal extends Color {
+    }
+
     // added to ensure there are classes that shouldn't match
 
     public static class Shape {
@@ -117,6 +124,85 @@ public class ClassFinderDepthTest extends TestCase {
         }
     }
 
+    public void testFindImplementationsReindexedAfterLink() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class));
+
+        // the parents are only read by link()
+        assertImplementations(finder, HSB.class);
+
+        finder.link();
+        assertImplementations(finder, HSB.class, Color.class, Red.class, Crimson.class);
+    }
+
+    public void testParallelLinking() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final AnnotationFinder finder =
+                    new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class), true, executor).link();
+
+            assertSubclasses(finder, Color.class, Red.class, Crimson.class);
+            assertSubclasses(finder, Shape.class, Square.class);
+            assertImplementations(finder, Hue.class, HSB.class, Color.class, Red.class, Crimson.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testImplementationsOfAClass() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class)).link();
+        try {
+            finder.findImplementations(Color.class);
+            fail("IllegalArgumentException should have been thrown");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    public void testLinkingOnceTheExecutorIsShutDown() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class), true, executor);
+        executor.shutdown();
+
+        finder.link();
+        assertSubclasses(finder, Color.class, Red.class, Crimson.class);
+        assertImplementations(finder, Hue.class, HSB.class, Color.class, Red.class, Crimson.class);
+    }
+
+    public void testMissingParentLookedUpOnce() throws Exception {
+        final Map<String, Integer> lookups = new HashMap<String, Integer>();
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Red.class, Teal.class) {
+            @Override
+            public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+                final Integer count = lookups.get(className);
+                lookups.put(className, count == null ? 1 : count + 1);
+                if (className.equals(Color.class.getName())) {
+                    throw new ClassNotFoundException(className);
+                }
+                return super.getBytecode(className);
+            }
+        });
+
+        lookups.clear();
+        finder.link();
+
+        assertEquals(Integer.valueOf(1), lookups.get(Color.class.getName()));
+    }
+
+    public void testOverriddenReadClassDef() throws Exception {
+        final List<String> read = new ArrayList<String>();
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class)) {
+            @Override
+            protected void readClassDef(final String className) {
+                read.add(className);
+                super.readClassDef(className);
+            }
+        }.link();
+
+        assertTrue(read.toString(), read.contains(Red.class.getName()));
+        assertTrue(read.toString(), read.contains(Color.class.getName()));
+        assertSubclasses(finder, Color.class, Red.class, Crimson.class);
+    }
+
     private void assertSubclasses(AnnotationFinder finder, Class<?> clazz, Class... subclasses) {
         final List<Class<?>> classes = new ArrayList<Class<?>>(finder.findSubclasses(clazz));
 
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.GenericHoliday;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.acme.foo.StringGenericHoliday;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.NoLoadingArchive;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.apache.xbean.finder.ClassQuery.annotatedWith;
+import static org.apache.xbean.finder.ClassQuery.implementing;
+import static org.apache.xbean.finder.ClassQuery.inPackage;
+import static org.apache.xbean.finder.ClassQuery.not;
+import static org.apache.xbean.finder.archive.NoLoadingArchive.classNames;
+import static org.apache.xbean.finder.archive.NoLoadingArchive.infoNames;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ClassQueryTest {
+
+    private final AnnotationFinder finder = new AnnotationFinder(new NoLoadingArchive(new ClassesArchive(
+            Blue.class, Green.class, Green.Emerald.class, Red.class, Red.Pink.class, Primary.class, Color.class,
+            Halloween.class, Holiday.class, GenericHoliday.class, StringGenericHoliday.class)), false);
+
+    @Test
+    public void and() {
+        assertEquals(new HashSet<String>(classNames(Blue.class, Green.class, Green.Emerald.class, Red.class)),
+                new HashSet<String>(infoNames(finder.findClassInfos(annotatedWith(Color.class).and(implementing(Primary.class))))));
+    }
+
+    @Test
+    public void andNot() {
+        assertEquals(classNames(Red.Pink.class), infoNames(finder.findClassInfos(annotatedWith(Color.class).andNot(implementing(Primary.class)))));
+    }
+
+    @Test
+    public void or() {
+        assertEquals(new HashSet<String>(classNames(Halloween.class, GenericHoliday.class, StringGenericHoliday.class)),
+                new HashSet<String>(infoNames(finder.findClassInfos(annotatedWith(Holiday.class).or(implementing(GenericHoliday.class))))));
+    }
+
+    @Test
+    public void packages() {
+        assertTrue(finder.findClassInfos(inPackage("org.acme")).isEmpty());
+        assertTrue(finder.findClassInfos(not(inPackage("org.acme.foo"))).isEmpty());
+        assertEquals(11, finder.findClassInfos(inPackage("org.acme.foo")).size());
+    }
+
+    @Test
+    public void unknownNames() {
+        assertTrue(finder.findClassInfos(annotatedWith("org.acme.Unknown")).isEmpty());
+        assertTrue(finder.findClassInfos(implementing("org.acme.Unknown")).isEmpty());
+    }
+
+    @Test
+    public void onlyMatchesAreLoaded() {
+        final AnnotationFinder loading = new AnnotationFinder(new ClassesArchive(Blue.class, Red.class, Red.Pink.class, Primary.class, Color.class), false);
+        final List<Class<?>> classes = loading.findClasses(annotatedWith(Color.class).andNot(implementing(Primary.class)));
+        assertEquals(Arrays.<Class<?>>asList(Red.Pink.class), classes);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ConcurrentQueryTest {
+
+    @Test
+    public void classesNotLoadedArePerThread() throws Exception {
+        final Archive archive = new ClassesArchive(Blue.class, Green.class, Red.class, FullyAnnotated.class);
+        final AnnotationFinder finder = new AnnotationFinder(new BrokenArchive(archive, Green.class.getName())).link();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 8; i++) {
+                final boolean colors = i % 2 == 0;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 200; j++) {
+                            if (colors) {
+                                assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+                                assertEquals(Collections.singleton(Green.class.getName()), new HashSet<String>(finder.getClassesNotLoaded()));
+                            } else {
+                                assertEquals(1, finder.findAnnotatedClasses(Type.class).size());
+                                assertEquals(Collections.<String>emptyList(), finder.getClassesNotLoaded());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class BrokenArchive implements Archive {
+        private final Archive archive;
+        private final String broken;
+
+        private BrokenArchive(Archive archive, String broken) {
+            this.archive = archive;
+            this.broken = broken;
+        }
+
+        public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(String className) throws ClassNotFoundException {
+            if (broken.equals(className)) throw new ClassNotFoundException(className);
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            return archive.iterator();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Color;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.archive.Archive;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.apache.xbean.finder.ParallelScanTest.archive;
+import static org.apache.xbean.finder.ParallelScanTest.assertSameIndex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class FilteredScanTest {
+
+    @Test
+    public void stubs() throws Exception {
+        final AnnotationFinder full = new AnnotationFinder(archive(), false);
+        final AnnotationFinder finder = new AnnotationFinder(archive(), false, new ScanOptions().annotations(Color.class));
+
+        assertEquals(full.findAnnotatedClasses(Color.class), finder.findAnnotatedClasses(Color.class));
+        assertEquals(full.classInfos.keySet(), finder.classInfos.keySet());
+
+        // not read, only known by name, parent and interfaces
+        assertTrue(finder.findAnnotatedMethodParameters(ParamA.class).isEmpty());
+        assertTrue(finder.classInfos.get(FullyAnnotated.class.getName()).getMethods().isEmpty());
+        assertEquals(full.findSubclasses(Halloween.class), finder.findSubclasses(Halloween.class));
+        assertEquals(full.findImplementations(Holiday.class), finder.findImplementations(Holiday.class));
+    }
+
+    @Test
+    public void skip() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive(), false, new ScanOptions().annotations(Color.class).stubs(false));
+
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertFalse(finder.classInfos.containsKey(FullyAnnotated.class.getName()));
+        assertFalse(finder.classInfos.containsKey(Halloween.class.getName()));
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        final Archive archive = archive();
+        final ScanOptions options = new ScanOptions().annotations(Color.class, ParamA.class);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameIndex(new AnnotationFinder(archive, false, options), new AnnotationFinder(archive, false, options.executor(executor)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
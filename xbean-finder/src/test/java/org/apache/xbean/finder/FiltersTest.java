@@ -23,6 +23,9 @@ import org.apache.xbean.finder.filter.Filter;
 import org.apache.xbean.finder.filter.FilterList;
 import org.apache.xbean.finder.filter.Filters;
 import org.apache.xbean.finder.filter.IncludeExcludeFilter;
+import org.apache.xbean.finder.filter.PackageFilter;
+import org.apache.xbean.finder.filter.PrefixFilter;
+import org.apache.xbean.finder.filter.TrieFilter;
 
 /**
  * @version $Rev$ $Date$
@@ -94,6 +97,74 @@ public class FiltersTest extends TestCase {
         assertSame(foo, Filters.optimize(filter));
     }
 
+    public void testCompiledNames() throws Exception {
+        final Filter[] filters = {
+                new PackageFilter("org.foo"),
+                new PackageFilter("org.foo.bar"),
+                new PrefixFilter("com.acme.Red"),
+                new PrefixFilter("net"),
+                new ClassFilter("org.bar.Blue"),
+                new ClassFilter("org.bar.Blue.Light")
+        };
+        final Filter list = new FilterList(filters);
+        final Filter filter = Filters.optimize(filters);
+        assertTrue(filter instanceof TrieFilter);
+
+        final String[] names = {
+                "org.foo.Red", "org.fooo.Red", "org.foo", "org.foo.bar.Red", "com.acme.Red", "com.acme.Redd",
+                "com.acme.Re", "net", "ne", "network.Foo", "org.bar.Blue", "org.bar.Blu", "org.bar.Bluee",
+                "org.bar.Blue.Light", "org.bar.Blue.", "", "org"
+        };
+        for (String name : names) {
+            assertEquals(name, list.accept(name), filter.accept(name));
+        }
+
+        assertTrue(Filters.optimize(new PrefixFilter("")).accept("anything"));
+        assertTrue(Filters.optimize(new PrefixFilter(""), new ClassFilter("foo")).accept("anything"));
+    }
+
+    public void testCompiledPatterns() throws Exception {
+        final Filter filter = Filters.patterns("org\\.foo\\..*", ".*\\.Blue", "(a)\\1");
+        assertTrue(filter instanceof FilterList);
+        assertEquals(2, ((FilterList) filter).getFilters().size());
+
+        assertTrue(filter.accept("org.foo.Red"));
+        assertTrue(filter.accept("org.bar.Blue"));
+        assertTrue(filter.accept("aa"));
+        assertFalse(filter.accept("a"));
+        assertFalse(filter.accept("org.bar.Red"));
+
+        final Filter merged = Filters.optimize(Filters.packages("org.foo", "org.bar"), Filters.packages("org.baz"));
+        assertTrue(merged instanceof TrieFilter);
+        assertEquals(3, ((TrieFilter) merged).getFilters().size());
+    }
+
+    public void testPruning() throws Exception {
+        final Filter packages = Filters.packages("org.foo", "org.bar.baz");
+        assertTrue(Filters.acceptsAny(packages, ""));
+        assertTrue(Filters.acceptsAny(packages, "org."));
+        assertTrue(Filters.acceptsAny(packages, "org.bar."));
+        assertTrue(Filters.acceptsAny(packages, "org.foo.util."));
+        assertFalse(Filters.acceptsAny(packages, "org.fooo."));
+        assertFalse(Filters.acceptsAny(packages, "com."));
+
+        assertTrue(Filters.acceptsAll(packages, "org.foo."));
+        assertTrue(Filters.acceptsAll(packages, "org.foo.util."));
+        assertFalse(Filters.acceptsAll(packages, "org.bar."));
+
+        final Filter excluded = Filters.invert(Filters.packages("org.foo"));
+        assertFalse(Filters.acceptsAny(excluded, "org.foo.util."));
+        assertTrue(Filters.acceptsAny(excluded, "org."));
+
+        final Filter includeExclude = new IncludeExcludeFilter(Filters.packages("org.foo"), Filters.packages("org.foo.util"));
+        assertTrue(Filters.acceptsAny(includeExclude, "org.foo."));
+        assertFalse(Filters.acceptsAny(includeExclude, "org.foo.util."));
+        assertFalse(Filters.acceptsAny(includeExclude, "com."));
+
+        assertTrue(Filters.acceptsAny(Filters.patterns("com\\..*"), "org."));
+        assertFalse(Filters.acceptsAll(Filters.patterns(".*"), "org."));
+    }
+
     public void testIncludeExclude() {
         Filter filter = new IncludeExcludeFilter(Filters.packages("org.foo", "org.bar"), Filters.packages("org.foo.util"));
 
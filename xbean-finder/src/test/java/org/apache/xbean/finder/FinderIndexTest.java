@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.apache.xbean.finder.ParallelScanTest.assertSameIndex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class FinderIndexTest {
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void indexedDirectory() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class, Color.class, FullyAnnotated.class, ParamA.class});
+        FinderIndex.write(classes);
+
+        final Archive archive = ClasspathArchive.archive(loader, classes.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+
+        assertSameIndex(new AnnotationFinder(new FileArchive(loader, classes), false), new AnnotationFinder(archive, false));
+    }
+
+    @Test
+    public void directoryOutsideOfTheClasspath() throws Exception {
+        final File classes = File.createTempFile("index", "classes");
+        assertTrue(classes.delete());
+
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "org/acme/gen/Indexed", null, "java/lang/Object", null);
+        writer.visitAnnotation("L" + Color.class.getName().replace('.', '/') + ";", true).visitEnd();
+        writer.visitEnd();
+        final File file = new File(classes, "org/acme/gen/Indexed.class");
+        assertTrue(file.getParentFile().mkdirs());
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(writer.toByteArray());
+        } finally {
+            out.close();
+        }
+
+        FinderIndex.write(classes);
+
+        final Archive archive = ClasspathArchive.archive(loader, classes.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+        assertEquals(Collections.singletonList("org.acme.gen.Indexed"), new AnnotationFinder(archive, false).getAnnotatedClassNames());
+    }
+
+    @Test
+    public void staleDirectoryIndexIsIgnored() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Color.class});
+        final File index = FinderIndex.write(classes);
+
+        // recompiled after the index was written
+        final File recompiled = new File(classes, Green.class.getName().replace('.', '/') + ".class");
+        assertTrue(recompiled.setLastModified(index.lastModified() + 2000));
+
+        final Archive archive = ClasspathArchive.archive(loader, classes.toURI().toURL());
+        assertFalse(archive instanceof IndexedArchive);
+
+        assertSameIndex(new AnnotationFinder(new FileArchive(loader, classes), false), new AnnotationFinder(archive, false));
+    }
+
+    @Test
+    public void indexedJarIsNotScanned() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class, Color.class});
+
+        // a jar with the index only, its classes come from the test classpath
+        final File jar = File.createTempFile("indexed", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+        out.putNextEntry(new ZipEntry(IndexedArchive.INDEX));
+        FinderIndex.write(new FileArchive(loader, classes), out);
+        out.close();
+
+        final Archive archive = ClasspathArchive.archive(loader, jar.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+        assertFalse(archive.iterator().hasNext());
+
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void brokenIndexIsIgnored() throws Exception {
+        final File classes = Archives.fileArchive(Collections.singletonMap(IndexedArchive.INDEX, "not an index"), Blue.class, Color.class);
+
+        final Archive archive = ClasspathArchive.archive(loader, classes.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+
+        assertSameIndex(new AnnotationFinder(new FileArchive(loader, classes), false), new AnnotationFinder(archive, false));
+    }
+}
@@ -19,8 +19,15 @@ package org.apache.xbean.finder;
 import org.apache.xbean.finder.archive.ClassesArchive;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @version $Rev$ $Date$
  */
@@ -40,7 +47,21 @@ public class FinderSelectTest {
 
     }
 
+    @Test
+    public void selectIsAViewOfTheParent() throws Exception {
+        final AnnotationFinder all = new AnnotationFinder(new ClassesArchive(Red.class, Green.class, Blue.class, Color.class));
+
+        final AnnotationFinder finder = all.select(Red.class.getName(), Blue.class.getName());
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(Red.class, Blue.class)), new HashSet<Class<?>>(finder.findAnnotatedClasses(Color.class)));
+        assertEquals(3, all.findAnnotatedClasses(Color.class).size());
 
+        // the infos are shared, the used annotation is part of the view
+        assertSame(all.classInfos.get(Red.class.getName()), finder.classInfos.get(Red.class.getName()));
+        assertSame(all.classInfos.get(Color.class.getName()), finder.classInfos.get(Color.class.getName()));
+        assertNull(finder.classInfos.get(Green.class.getName()));
+
+        assertTrue(all.select("org.acme.Unknown").findAnnotatedClasses(Color.class).isEmpty());
+    }
 
     @java.lang.annotation.Target(value = {java.lang.annotation.ElementType.TYPE})
     @java.lang.annotation.Retention(value = java.lang.annotation.RetentionPolicy.RUNTIME)
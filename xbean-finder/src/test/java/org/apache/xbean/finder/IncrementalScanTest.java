@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.apache.xbean.finder.archive.NoLoadingArchive.infoNames;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class IncrementalScanTest {
+
+    private static final String MARKER = "org.acme.gen.Marker";
+
+    @Test
+    public void refreshReadsTheChangedClassesOnly() throws Exception {
+        final File dir = File.createTempFile("incremental", "classes");
+        assertTrue(dir.delete());
+
+        write(dir, "org/acme/gen/Base", "java/lang/Object", true);
+        write(dir, "org/acme/gen/Child", "org/acme/gen/Base", false);
+        write(dir, "org/acme/gen/Other", "java/lang/Object", false);
+
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(new URLClassLoader(new URL[]{dir.toURI().toURL()}), dir), false, new ScanOptions().incremental(true));
+        finder.link();
+        assertEquals(Arrays.asList("org.acme.gen.Base"), infoNames(finder.findAnnotatedClassInfos(MARKER)));
+        assertEquals(Arrays.asList("org.acme.gen.Child"), infoNames(finder.findClassInfos(ClassQuery.implementing("org.acme.gen.Base"))));
+        final AnnotationFinder.ClassInfo other = finder.classInfos.get("org.acme.gen.Other");
+
+        assertTrue(finder.refresh().isEmpty());
+
+        // Base loses its annotation, Child is deleted and Added is a new subclass of Base
+        final AnnotationFinder.ClassInfo base = finder.classInfos.get("org.acme.gen.Base");
+        write(dir, "org/acme/gen/Base", "java/lang/Object", false);
+        new File(dir, "org/acme/gen/Base.class").setLastModified(System.currentTimeMillis() + 2000);
+        assertTrue(new File(dir, "org/acme/gen/Child.class").delete());
+        write(dir, "org/acme/gen/Added", "org/acme/gen/Base", true);
+
+        final List<String> refreshed = finder.refresh();
+        assertEquals(new HashSet<String>(Arrays.asList("org.acme.gen.Base", "org.acme.gen.Child", "org.acme.gen.Added")), new HashSet<String>(refreshed));
+
+        assertEquals(Arrays.asList("org.acme.gen.Added"), infoNames(finder.findAnnotatedClassInfos(MARKER)));
+        assertEquals(Arrays.asList("org.acme.gen.Added"), infoNames(finder.findClassInfos(ClassQuery.implementing("org.acme.gen.Base"))));
+        assertEquals(3, finder.getAnnotatedClassNames().size());
+        assertEquals(3, finder.findClassInfos(ClassQuery.inPackage("org.acme.gen")).size());
+        assertNotSame(base, finder.classInfos.get("org.acme.gen.Base"));
+
+        // not read again
+        assertSame(other, finder.classInfos.get("org.acme.gen.Other"));
+    }
+
+    @Test
+    public void refreshSeesTheMultiReleaseClassFiles() throws Exception {
+        final File dir = File.createTempFile("incremental", "mjar");
+        assertTrue(dir.delete());
+        assertTrue(new File(dir, "META-INF").mkdirs());
+        final FileOutputStream manifest = new FileOutputStream(new File(dir, "META-INF/MANIFEST.MF"));
+        try {
+            manifest.write("Manifest-Version: 1.0\nMulti-Release: true\n".getBytes("UTF-8"));
+        } finally {
+            manifest.close();
+        }
+
+        String version = System.getProperty("java.version", "1");
+        if (version.indexOf('.') > 0) {
+            version = version.substring(0, version.indexOf('.'));
+        }
+        final String versioned = "META-INF/versions/" + version + "/";
+
+        write(dir, "org/acme/gen/Base", "java/lang/Object", false);
+        write(dir, versioned + "org/acme/gen/Base", "java/lang/Object", false);
+        write(dir, "org/acme/gen/Other", "java/lang/Object", false);
+
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(new URLClassLoader(new URL[]{dir.toURI().toURL()}), dir), false, new ScanOptions().incremental(true));
+        assertEquals(2, finder.getAnnotatedClassNames().size());
+        assertTrue(finder.refresh().isEmpty());
+
+        write(dir, "org/acme/gen/Other", "java/lang/Object", true);
+        new File(dir, "org/acme/gen/Other.class").setLastModified(System.currentTimeMillis() + 2000);
+        assertEquals(Arrays.asList("org.acme.gen.Other"), finder.refresh());
+        assertEquals(Arrays.asList("org.acme.gen.Other"), infoNames(finder.findAnnotatedClassInfos(MARKER)));
+
+        // only the class file of the running version changes
+        write(dir, versioned + "org/acme/gen/Base", "java/lang/Object", true);
+        new File(dir, versioned + "org/acme/gen/Base.class").setLastModified(System.currentTimeMillis() + 4000);
+        assertEquals(Arrays.asList("org.acme.gen.Base"), finder.refresh());
+    }
+
+    @Test
+    public void refreshIndexedDirectory() throws Exception {
+        final File dir = File.createTempFile("incremental", "indexed");
+        assertTrue(dir.delete());
+
+        write(dir, "org/acme/gen/Base", "java/lang/Object", false);
+        write(dir, "org/acme/gen/Other", "java/lang/Object", false);
+        FinderIndex.write(dir);
+
+        final URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()});
+        final Archive archive = ClasspathArchive.archive(loader, dir.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+
+        final AnnotationFinder finder = new AnnotationFinder(archive, false, new ScanOptions().incremental(true));
+        assertTrue(finder.findAnnotatedClassInfos(MARKER).isEmpty());
+        assertTrue(finder.refresh().isEmpty());
+
+        write(dir, "org/acme/gen/Base", "java/lang/Object", true);
+        new File(dir, "org/acme/gen/Base.class").setLastModified(System.currentTimeMillis() + 2000);
+        assertEquals(Arrays.asList("org.acme.gen.Base"), finder.refresh());
+        assertEquals(Arrays.asList("org.acme.gen.Base"), infoNames(finder.findAnnotatedClassInfos(MARKER)));
+    }
+
+    private static void write(File dir, String name, String superName, boolean marked) throws Exception {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        if (marked) {
+            writer.visitAnnotation("L" + MARKER.replace('.', '/') + ";", true).visitEnd();
+        }
+        writer.visitEnd();
+
+        final File file = new File(dir, name + ".class");
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(writer.toByteArray());
+        } finally {
+            out.close();
+        }
+    }
+}
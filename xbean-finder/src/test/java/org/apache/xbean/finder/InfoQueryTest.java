@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassAnnotatedClass;
+import org.acme.bar.ClassAnnotation;
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Method;
+import org.acme.bar.ParamA;
+import org.acme.bar.ParamB;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.NoLoadingArchive;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.apache.xbean.finder.archive.NoLoadingArchive.classNames;
+import static org.apache.xbean.finder.archive.NoLoadingArchive.infoNames;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class InfoQueryTest {
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void infosMatchLoadedQueries() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{FullyAnnotated.class});
+        final AnnotationFinder loading = new AnnotationFinder(new FileArchive(loader, classes));
+        final AnnotationFinder finder = new AnnotationFinder(new NoLoadingArchive(new FileArchive(loader, classes)));
+
+        assertEquals(classNames(loading.findAnnotatedClasses(Type.class)), infoNames(finder.findAnnotatedClassInfos(Type.class.getName())));
+        assertEquals(loading.findAnnotatedMethods(Method.class).size(), finder.findAnnotatedMethodInfos(Method.class.getName()).size());
+        assertEquals(loading.findAnnotatedConstructors(Construct.class).size(), finder.findAnnotatedConstructorInfos(Construct.class.getName()).size());
+        assertEquals(loading.findAnnotatedFields(Field.class).size(), finder.findAnnotatedFieldInfos(Field.class.getName()).size());
+        assertEquals(loading.findAnnotatedMethodParameters(ParamA.class).size(), finder.findAnnotatedMethodParameterInfos(ParamA.class.getName()).size());
+        assertEquals(loading.findAnnotatedConstructorParameters(ParamA.class).size(), finder.findAnnotatedConstructorParameterInfos(ParamA.class.getName()).size());
+        assertEquals(loading.findAnnotatedMethodParameters(ParamB.class).size(), finder.findAnnotatedMethodParameterInfos(ParamB.class.getName()).size());
+        assertEquals(loading.findAnnotatedConstructorParameters(ParamB.class).size(), finder.findAnnotatedConstructorParameterInfos(ParamB.class.getName()).size());
+
+        for (AnnotationFinder.MethodInfo info : finder.findAnnotatedMethodInfos(Method.class.getName())) {
+            assertFalse(info.isConstructor());
+        }
+    }
+
+    @Test
+    public void retentionIsReadFromBytecode() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{ClassAnnotatedClass.class, ClassAnnotation.class, Color.class});
+        final AnnotationFinder finder = new AnnotationFinder(new NoLoadingArchive(new FileArchive(loader, classes)));
+
+        assertFalse(finder.isRuntimeAnnotation(ClassAnnotation.class.getName()));
+        assertTrue(finder.isRuntimeAnnotation(Color.class.getName()));
+        assertTrue(finder.isRuntimeAnnotation("org.acme.Missing"));
+
+        assertEquals(0, finder.findAnnotatedClassInfos(ClassAnnotation.class.getName()).size());
+        assertEquals(0, finder.findAnnotatedMethodInfos(ClassAnnotation.class.getName()).size());
+
+        final AnnotationFinder unchecked = new AnnotationFinder(new NoLoadingArchive(new FileArchive(loader, classes)), false);
+        assertEquals(1, unchecked.findAnnotatedClassInfos(ClassAnnotation.class.getName()).size());
+    }
+
+    @Test
+    public void scannedInfosShareTheirStrings() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Red.class});
+        final AnnotationFinder finder = new AnnotationFinder(new NoLoadingArchive(new FileArchive(loader, classes)));
+
+        final AnnotationFinder.ClassInfo blue = finder.classInfos.get(Blue.class.getName());
+        final AnnotationFinder.ClassInfo red = finder.classInfos.get(Red.class.getName());
+
+        assertSame(blue.getSuperType(), red.getSuperType());
+        assertSame(blue.getInterfaces().get(0), red.getInterfaces().get(0));
+        assertSame(blue.getAnnotations().get(0).getName(), red.getAnnotations().get(0).getName());
+        assertSame(blue.getPackageName(), red.getPackageName());
+    }
+}
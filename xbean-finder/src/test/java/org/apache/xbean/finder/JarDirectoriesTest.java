@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.Test;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class JarDirectoriesTest {
+
+    @Test
+    public void clearedListingsAreForgotten() throws Exception {
+        final URL blue = new URL("jar:" + Archives.jarArchive(Blue.class).toURI().toURL() + "!/org/acme/foo/");
+        final URL green = new URL("jar:" + Archives.jarArchive(Green.class).toURI().toURL() + "!/org/acme/foo/");
+
+        assertEquals(1, JarDirectories.list(blue, "org/acme/foo/").size());
+        final Map<String, ? extends Reference<?>> listings = listings();
+        assertTrue(listings.containsKey(JarDirectories.key(blue)));
+
+        // as the GC does for a softly referenced listing
+        final Reference<?> listing = listings.get(JarDirectories.key(blue));
+        listing.clear();
+        listing.enqueue();
+
+        assertEquals(1, JarDirectories.list(green, "org/acme/foo/").size());
+        assertFalse(listings.containsKey(JarDirectories.key(blue)));
+        assertTrue(listings.containsKey(JarDirectories.key(green)));
+
+        // listed again when needed
+        assertEquals(1, JarDirectories.list(blue, "org/acme/foo/").size());
+        assertTrue(listings.containsKey(JarDirectories.key(blue)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ? extends Reference<?>> listings() throws Exception {
+        final Field field = JarDirectories.class.getDeclaredField("LISTINGS");
+        field.setAccessible(true);
+        return (Map<String, ? extends Reference<?>>) field.get(null);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LayeredFinderTest {
+
+    private final AnnotationFinder base = new AnnotationFinder(new ClassesArchive(Green.class, Primary.class, Color.class, Halloween.class, Holiday.class)).link();
+
+    @Test
+    public void queriesSeeBothLayers() {
+        final AnnotationFinder finder = new AnnotationFinder(base, new ClassesArchive(Blue.class, Red.class));
+
+        assertEquals(set(Green.class, Blue.class, Red.class), set(finder.findAnnotatedClasses(Color.class)));
+        assertEquals(set(Green.class), set(base.findAnnotatedClasses(Color.class)));
+
+        assertEquals(new HashSet<String>(Arrays.asList(Green.class.getName(), Primary.class.getName(), Color.class.getName(),
+                Halloween.class.getName(), Holiday.class.getName(), Blue.class.getName(), Red.class.getName())),
+                new HashSet<String>(finder.getAnnotatedClassNames()));
+        assertTrue(finder.findClassesInPackage("org.acme.foo", false).containsAll(Arrays.asList(Green.class, Blue.class)));
+        assertSame(base, finder.getBase());
+    }
+
+    @Test
+    public void baseIsNotModifiedByLinking() {
+        final int classes = base.classInfos.size();
+        final int annotations = base.annotated.size();
+
+        final AnnotationFinder finder = new AnnotationFinder(base, new ClassesArchive(Blue.class, FunnyFamilyHalloween.class)).link();
+
+        assertEquals(set(FamilyHalloween.class, FunnyFamilyHalloween.class), set(finder.findSubclasses(Halloween.class)));
+        assertEquals(set(Green.class, Blue.class), set(finder.findImplementations(Primary.class)));
+
+        assertEquals(classes, base.classInfos.size());
+        assertEquals(annotations, base.annotated.size());
+        assertTrue(base.findSubclasses(Halloween.class).isEmpty());
+        assertEquals(set(Green.class), set(base.findImplementations(Primary.class)));
+    }
+
+    @Test
+    public void layersAreIndependent() {
+        final AnnotationFinder blue = new AnnotationFinder(base, new ClassesArchive(Blue.class)).link();
+        final AnnotationFinder red = new AnnotationFinder(base, new ClassesArchive(Red.class)).link();
+
+        assertEquals(set(Green.class, Blue.class), set(blue.findAnnotatedClasses(Color.class)));
+        assertEquals(set(Green.class, Red.class), set(red.findAnnotatedClasses(Color.class)));
+    }
+
+    private static Set<Class<?>> set(Class<?>... classes) {
+        return new HashSet<Class<?>>(Arrays.asList(classes));
+    }
+
+    private static <T> Set<Class<?>> set(List<Class<? extends T>> classes) {
+        return new HashSet<Class<?>>(classes);
+    }
+}
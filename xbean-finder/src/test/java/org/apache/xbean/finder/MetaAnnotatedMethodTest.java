@@ -24,6 +24,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +39,30 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public class MetaAnnotatedMethodTest extends TestCase {
 
+    public void testClosureFollowsLinking() throws Exception {
+        AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Square.class, Circle.class, Triangle.class, Oval.class, Store.class, Farm.class, None.class));
+
+        // the meta-annotations are only known once linked
+        final List<String> unlinked = names(finder.findMetaAnnotatedMethods(Color.class));
+        assertFalse(unlinked.contains("square"));
+
+        finder.link();
+
+        final List<String> linked = names(finder.findMetaAnnotatedMethods(Color.class));
+        assertTrue(linked.contains("square"));
+        assertTrue(linked.containsAll(unlinked));
+        assertEquals(linked, names(finder.findMetaAnnotatedMethods(Color.class)));
+    }
+
+    private static List<String> names(List<Annotated<Method>> methods) {
+        final List<String> names = new ArrayList<String>();
+        for (Annotated<Method> method : methods) {
+            names.add(method.get().getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
     public void test() throws Exception {
         AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Square.class, Circle.class, Triangle.class, Oval.class, Store.class, Farm.class, None.class)).link();
 
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.One;
+import org.acme.bar.FullyAnnotated;
+import org.acme.foo.Blue;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Halloween;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PackageQueryTest {
+
+    private final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(One.class, Blue.class, Red.class, Red.Pink.class, FullyAnnotated.class));
+
+    @Test
+    public void packageOnly() {
+        final List<Class<?>> classes = finder.findClassesInPackage("org.acme", false);
+        assertEquals(Arrays.<Class<?>>asList(One.class), classes);
+    }
+
+    @Test
+    public void subPackages() {
+        final List<Class<?>> classes = finder.findClassesInPackage("org.acme", true);
+        assertEquals(5, classes.size());
+        assertTrue(classes.containsAll(Arrays.asList(One.class, Blue.class, Red.class, Red.Pink.class, FullyAnnotated.class)));
+
+        assertEquals(3, finder.findClassesInPackage("org.acme.foo", true).size());
+        assertTrue(finder.findClassesInPackage("org.acme.foo.bar", true).isEmpty());
+    }
+
+    @Test
+    public void nameIsAPrefix() {
+        assertEquals(3, finder.findClassesInPackage("org.acme.f", true).size());
+        assertTrue(finder.findClassesInPackage("org.acme.f", false).isEmpty());
+        assertEquals(5, finder.findClassesInPackage("", true).size());
+    }
+
+    @Test
+    public void linkedClassesAreIndexed() {
+        final AnnotationFinder linked = new AnnotationFinder(new ClassesArchive(FunnyFamilyHalloween.class));
+        assertFalse(linked.findClassesInPackage("org.acme.foo", false).contains(Halloween.class));
+
+        linked.enableFindSubclasses();
+        final List<Class<?>> classes = linked.findClassesInPackage("org.acme.foo", false);
+        assertTrue(classes.containsAll(Arrays.asList(FunnyFamilyHalloween.class, FamilyHalloween.class, Halloween.class)));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassAnnotatedClass;
+import org.acme.NotAnnotated;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Red;
+import org.acme.foo.Thanksgiving;
+import org.acme.foo.ValentinesDay;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelScanTest {
+
+    @Test
+    public void sameIndexAsSerialScan() throws Exception {
+        final Archive archive = archive();
+
+        final AnnotationFinder serial = new AnnotationFinder(archive, false);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameIndex(serial, new AnnotationFinder(archive, false, executor));
+            assertSameIndex(serial, new AnnotationFinder(archive, false, new ScanOptions().executor(executor).window(2)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void pipelinedScan() throws Exception {
+        final Archive archive = archive();
+        final Archive composite = new CompositeArchive(archive, new ClassesArchive(Holiday.class, ClassAnnotatedClass.class), archive);
+
+        final ExecutorService readers = Executors.newFixedThreadPool(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameIndex(new AnnotationFinder(composite, false), new AnnotationFinder(composite, false, new ScanOptions().readers(readers).executor(executor)));
+            assertSameIndex(new AnnotationFinder(composite, false), new AnnotationFinder(composite, false, new ScanOptions().readers(readers).window(3).readAhead(1)));
+        } finally {
+            readers.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failedPipelinedScanStopsReading() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<Archive.Entry> entries = new ArrayList<Archive.Entry>();
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            entries.add(new Archive.Entry() {
+                public String getName() {
+                    return "org.acme.Entry" + index;
+                }
+
+                public InputStream getBytecode() throws IOException {
+                    reads.incrementAndGet();
+                    if (index == 0) throw new NoClassDefFoundError("broken");
+                    try {
+                        // holds the reader until the scan failed
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        // cancelled
+                    }
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            });
+        }
+        final Archive archive = new Archive() {
+            public InputStream getBytecode(String className) throws ClassNotFoundException {
+                throw new ClassNotFoundException(className);
+            }
+
+            public Class<?> loadClass(String className) throws ClassNotFoundException {
+                throw new ClassNotFoundException(className);
+            }
+
+            public Iterator<Entry> iterator() {
+                return entries.iterator();
+            }
+        };
+
+        final ExecutorService readers = Executors.newSingleThreadExecutor();
+        try {
+            new AnnotationFinder(archive, false, new ScanOptions().readers(readers));
+            fail("NoClassDefFoundError should have been thrown");
+        } catch (NoClassDefFoundError e) {
+            // pass
+        } finally {
+            blocked.countDown();
+            readers.shutdown();
+        }
+        assertTrue(readers.awaitTermination(10, TimeUnit.SECONDS));
+
+        // the second read may have been in progress, the other ones were cancelled
+        assertTrue(String.valueOf(reads.get()), reads.get() <= 2);
+    }
+
+    @Test
+    public void parameterInfosHoldTheirAnnotations() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // the sequential scan adds the annotation to the ParameterInfo too, publish(Info) indexes it from there
+            for (AnnotationFinder finder : Arrays.asList(new AnnotationFinder(archive(), false), new AnnotationFinder(archive(), false, executor))) {
+                int parameters = 0;
+                for (AnnotationFinder.Info info : finder.annotated.get(ParamA.class.getName())) {
+                    if (!(info instanceof AnnotationFinder.ParameterInfo)) continue;
+                    parameters++;
+
+                    final List<AnnotationFinder.AnnotationInfo> annotations = ((AnnotationFinder.ParameterInfo) info).getAnnotations();
+                    assertEquals(1, annotations.size());
+                    assertEquals(ParamA.class.getName(), annotations.get(0).getName());
+                }
+                assertEquals(2, parameters);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void queries() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AnnotationFinder finder = new AnnotationFinder(archive(), true, executor).link();
+
+            assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+            assertEquals(1, finder.findAnnotatedMethodParameters(ParamA.class).size());
+            assertEquals(1, finder.findAnnotatedConstructorParameters(ParamA.class).size());
+            assertEquals(2, finder.findSubclasses(Halloween.class).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static Archive archive() throws ClassNotFoundException {
+        return new ClassesArchive(Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+                Red.class, Red.CandyApple.class, Red.Pink.class, Holiday.class, Halloween.class, FamilyHalloween.class,
+                FunnyFamilyHalloween.class, Thanksgiving.class, ValentinesDay.class, Color.class,
+                FullyAnnotated.class, ParamA.class, ClassAnnotatedClass.class, NotAnnotated.class,
+                Class.forName("org.acme.foo.package-info"));
+    }
+
+    public static void assertSameIndex(AnnotationFinder expected, AnnotationFinder actual) {
+        assertEquals(new TreeSet<String>(expected.classInfos.keySet()), new TreeSet<String>(actual.classInfos.keySet()));
+        assertEquals(new TreeSet<String>(expected.originalInfos.keySet()), new TreeSet<String>(actual.originalInfos.keySet()));
+        assertEquals(new TreeSet<String>(expected.annotated.keySet()), new TreeSet<String>(actual.annotated.keySet()));
+
+        for (Map.Entry<String, List<AnnotationFinder.Info>> entry : expected.annotated.entrySet()) {
+            assertEquals(entry.getKey(), describe(entry.getValue()), describe(actual.annotated.get(entry.getKey())));
+        }
+    }
+
+    private static List<String> describe(List<AnnotationFinder.Info> infos) {
+        final List<String> list = new ArrayList<String>();
+        for (AnnotationFinder.Info info : infos) {
+            final String name = info instanceof AnnotationFinder.PackageInfo ? info.getName() : info.toString();
+            list.add(info.getClass().getSimpleName() + " " + name);
+        }
+        return list;
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.xbean.finder;
  */
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URL;
@@ -30,8 +31,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import junit.framework.TestCase;
 import org.acme.BarUrlHandler;
@@ -375,6 +382,118 @@ public class ResourceFinderTest extends TestCase {
     }
 
 
+    public void testJarDirectoryListing() throws Exception {
+        final File jar = File.createTempFile("listing", ".jar");
+        jar.deleteOnExit();
+        writeJar(jar, "META-INF/plugins/", "META-INF/plugins/one", "META-INF/plugins/two",
+                "META-INF/plugins/nested/", "META-INF/plugins/nested/three", "META-INF/other/", "META-INF/other/four");
+
+        final URL url = jar.toURI().toURL();
+        assertEquals(2, new ResourceFinder("META-INF/", url).getResourcesMap("plugins").size());
+
+        // another finder on the same jar uses the same listing
+        final Map<String, URL> resources = new ResourceFinder("META-INF/plugins/", url).getResourcesMap("");
+        assertEquals(2, resources.size());
+        assertTrue(resources.containsKey("one"));
+        assertTrue(resources.containsKey("two"));
+        assertEquals(1, new ResourceFinder("META-INF/", url).getResourcesMap("plugins/nested").size());
+    }
+
+    public void testJarFindResource() throws Exception {
+        final File jar = File.createTempFile("lookup", ".jar");
+        jar.deleteOnExit();
+        writeJar(jar, "META-INF/", "META-INF/MANIFEST.MF", "META-INF/services/", "META-INF/services/one");
+
+        final URL root = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final ResourceFinder finder = new ResourceFinder("META-INF/", root);
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(finder.find("services/one"));
+            assertNotNull(finder.find("services"));
+            assertNotNull(finder.find("services/"));
+            assertTrue(finder.findAll("services/two").isEmpty());
+        }
+        assertEquals(1, finder.findAll("services/one").size());
+
+        // the entries are relative to a url inside the jar
+        final ResourceFinder nested = new ResourceFinder("services/", new URL(root, "META-INF/"));
+        assertNotNull(nested.find("one"));
+        assertTrue(nested.findAll("two").isEmpty());
+
+        // a redeployed jar is listed again
+        writeJar(jar, "META-INF/", "META-INF/MANIFEST.MF", "META-INF/services/", "META-INF/services/one", "META-INF/services/two");
+        assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+        assertEquals(1, finder.findAll("services/two").size());
+        assertEquals(1, nested.findAll("two").size());
+    }
+
+    public void testReadAllInParallel() throws Exception {
+        final File directory = File.createTempFile("contents", "");
+        assertTrue(directory.delete());
+        final File services = new File(directory, "META-INF/services");
+        assertTrue(services.mkdirs());
+        for (int i = 0; i < 20; i++) {
+            final FileOutputStream out = new FileOutputStream(new File(services, "service" + i));
+            out.write(("org.acme.Servic\u00e9" + i + "\n").getBytes("UTF-8"));
+            out.close();
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final AtomicInteger reads = new AtomicInteger();
+        final Executor executor = new Executor() {
+            public void execute(final Runnable command) {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        reads.incrementAndGet();
+                        command.run();
+                    }
+                });
+            }
+        };
+        try {
+            final ResourceFinder finder = new ResourceFinder("META-INF/", directory.toURI().toURL()).executor(executor);
+            final Map<String, String> strings = finder.mapAllStrings("services");
+            assertEquals(20, strings.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("org.acme.Servic\u00e9" + i, strings.get("service" + i));
+            }
+            assertTrue(reads.get() > 0);
+
+            reads.set(0);
+            assertEquals(strings, finder.mapAvailableStrings("services"));
+            assertTrue(reads.get() > 0);
+            assertEquals(0, finder.getResourcesNotLoaded().size());
+            assertEquals(20, finder.mapAllProperties("services").size());
+        } finally {
+            pool.shutdown();
+            delete(directory);
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        assertTrue(file.getPath(), file.delete());
+    }
+
+    private static void writeJar(File file, String... entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write(entry.getBytes());
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
         JarFile jarfile = null;
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import static org.apache.xbean.finder.ParallelScanTest.assertSameIndex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanCacheTest {
+
+    private File directory;
+    private int iterations;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("xbean-finder", "cache");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        new ScanCache(directory).clear();
+        directory.delete();
+    }
+
+    @Test
+    public void reuseUnchangedJars() throws Exception {
+        final File colors = Archives.jarArchive(Blue.class, Green.class, Red.class, Color.class);
+        final File annotated = Archives.jarArchive(FullyAnnotated.class, ParamA.class);
+
+        final AnnotationFinder expected = new AnnotationFinder(archive(colors, annotated), false);
+        final ScanOptions options = new ScanOptions().cache(new ScanCache(directory));
+
+        iterations = 0;
+        assertSameIndex(expected, new AnnotationFinder(archive(colors, annotated), false, options));
+        assertEquals(2, iterations);
+        assertEquals(2, directory.listFiles().length);
+
+        iterations = 0;
+        final AnnotationFinder cached = new AnnotationFinder(archive(colors, annotated), true, options);
+        assertSameIndex(expected, cached);
+        assertEquals(0, iterations);
+        assertEquals(3, cached.findAnnotatedClasses(Color.class).size());
+        assertEquals(1, cached.findAnnotatedMethodParameters(ParamA.class).size());
+    }
+
+    @Test
+    public void rescanModifiedJars() throws Exception {
+        final File jar = Archives.jarArchive(Blue.class, Color.class);
+        final ScanOptions options = new ScanOptions().cache(new ScanCache(directory));
+
+        new AnnotationFinder(archive(jar), false, options);
+
+        Archives.jarArchive(jar, new HashMap<String, String>(), Blue.class, Green.class, Color.class);
+        assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+        iterations = 0;
+        final AnnotationFinder finder = new AnnotationFinder(archive(jar), false, options);
+        assertEquals(1, iterations);
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+
+        iterations = 0;
+        assertSameIndex(finder, new AnnotationFinder(archive(jar), false, options));
+        assertEquals(0, iterations);
+    }
+
+    private Archive archive(File... jars) throws Exception {
+        final URL[] urls = new URL[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            urls[i] = new URL("jar:" + jars[i].toURI().toURL() + "!/");
+        }
+
+        final URLClassLoader loader = new URLClassLoader(urls, getClass().getClassLoader());
+        final Archive[] archives = new Archive[jars.length];
+        for (int i = 0; i < urls.length; i++) {
+            archives[i] = new JarArchive(loader, urls[i]) {
+                @Override
+                public Iterator<Entry> iterator() {
+                    iterations++;
+                    return super.iterator();
+                }
+            };
+        }
+        return new CompositeArchive(archives);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Method;
+import org.acme.bar.ParamA;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.apache.xbean.finder.ParallelScanTest.archive;
+import static org.apache.xbean.finder.ParallelScanTest.assertSameIndex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanProfileTest {
+
+    @Test
+    public void classes() throws Exception {
+        final AnnotationFinder full = new AnnotationFinder(archive());
+        final AnnotationFinder finder = new AnnotationFinder(archive(), true, new ScanOptions().profile(ScanProfile.CLASSES));
+
+        assertEquals(full.findAnnotatedClasses(Color.class), finder.findAnnotatedClasses(Color.class));
+        assertEquals(full.findAnnotatedClasses(Type.class), finder.findAnnotatedClasses(Type.class));
+
+        final AnnotationFinder.ClassInfo info = finder.classInfos.get(FullyAnnotated.class.getName());
+        assertTrue(info.getMethods().isEmpty());
+        assertTrue(info.getFields().isEmpty());
+        assertTrue(finder.findAnnotatedMethods(Method.class).isEmpty());
+    }
+
+    @Test
+    public void annotatedMembers() throws Exception {
+        final AnnotationFinder full = new AnnotationFinder(archive());
+        final AnnotationFinder finder = new AnnotationFinder(archive(), true, new ScanOptions().profile(ScanProfile.ANNOTATED_MEMBERS));
+
+        assertEquals(full.findAnnotatedClasses(Color.class), finder.findAnnotatedClasses(Color.class));
+        assertEquals(full.findAnnotatedMethods(Method.class), finder.findAnnotatedMethods(Method.class));
+        assertEquals(full.findAnnotatedFields(Field.class), finder.findAnnotatedFields(Field.class));
+        assertEquals(full.findAnnotatedConstructors(Construct.class), finder.findAnnotatedConstructors(Construct.class));
+
+        // only the annotated members are kept
+        for (AnnotationFinder.MethodInfo method : finder.classInfos.get(FullyAnnotated.class.getName()).getMethods()) {
+            assertTrue(method.toString(), !method.getAnnotations().isEmpty());
+        }
+        assertTrue(finder.findAnnotatedMethodParameters(ParamA.class).isEmpty());
+        assertTrue(finder.findAnnotatedConstructorParameters(ParamA.class).isEmpty());
+    }
+
+    @Test
+    public void indexedArchive() throws Exception {
+        final ClassLoader loader = getClass().getClassLoader();
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Color.class, FullyAnnotated.class, Method.class, ParamA.class});
+        FinderIndex.write(classes);
+
+        final Archive archive = ClasspathArchive.archive(loader, classes.toURI().toURL());
+        assertTrue(archive instanceof IndexedArchive);
+
+        // the index holds all the infos, the profile and the pre-filter are still applied
+        final ScanOptions members = new ScanOptions().profile(ScanProfile.ANNOTATED_MEMBERS);
+        assertSameIndex(new AnnotationFinder(new FileArchive(loader, classes), false, members), new AnnotationFinder(archive, false, members));
+        assertTrue(new AnnotationFinder(archive, false, members).findAnnotatedMethodParameters(ParamA.class).isEmpty());
+
+        final ScanOptions filtered = new ScanOptions().annotations(Color.class);
+        final AnnotationFinder finder = new AnnotationFinder(archive, false, filtered);
+        assertSameIndex(new AnnotationFinder(new FileArchive(loader, classes), false, filtered), finder);
+        assertTrue(finder.findAnnotatedMethods(Method.class).isEmpty());
+    }
+
+    @Test
+    public void full() throws Exception {
+        assertSameIndex(new AnnotationFinder(archive()), new AnnotationFinder(archive(), true, new ScanOptions().profile(ScanProfile.FULL)));
+    }
+}
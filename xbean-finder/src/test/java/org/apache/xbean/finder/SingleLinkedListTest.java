@@ -100,6 +100,17 @@ public class SingleLinkedListTest extends TestCase {
         assertEquals("five", list.get(i++));
     }
 
+    public void testRemove() {
+        assertTrue(list.remove("three"));
+        assertTrue(list.remove("five"));
+        assertTrue(list.remove("one"));
+        assertFalse(list.remove("six"));
+
+        assertEquals(2, list.size());
+        assertEquals("two", list.get(0));
+        assertEquals("four", list.get(1));
+    }
+
     public void testGetInvalid() {
 
         try {
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Method;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StreamQueryTest {
+
+    @Test
+    public void sameResultsAsLists() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Blue.class, Green.class, Red.class, FullyAnnotated.class));
+
+        assertEquals(finder.findAnnotatedClasses(Color.class), list(finder.streamAnnotatedClasses(Color.class)));
+        assertEquals(finder.findAnnotatedMethods(Method.class), list(finder.streamAnnotatedMethods(Method.class)));
+        assertEquals(finder.findAnnotatedConstructors(Construct.class), list(finder.streamAnnotatedConstructors(Construct.class)));
+        assertEquals(finder.findAnnotatedFields(Field.class), list(finder.streamAnnotatedFields(Field.class)));
+    }
+
+    @Test
+    public void earlyTermination() throws Exception {
+        final CountingArchive archive = new CountingArchive(new ClassesArchive(Blue.class, Green.class, Red.class));
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+
+        final Iterator<Class<?>> classes = finder.streamAnnotatedClasses(Color.class).iterator();
+        assertTrue(classes.hasNext());
+        classes.next();
+        assertEquals(1, archive.loaded);
+
+        classes.next();
+        classes.next();
+        assertFalse(classes.hasNext());
+        assertEquals(3, archive.loaded);
+    }
+
+    private static <T> List<T> list(Iterable<T> iterable) {
+        final List<T> list = new ArrayList<T>();
+        for (T t : iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+
+    private static class CountingArchive implements Archive {
+        private final Archive archive;
+        private int loaded;
+
+        private CountingArchive(Archive archive) {
+            this.archive = archive;
+        }
+
+        public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(String className) throws ClassNotFoundException {
+            loaded++;
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            return archive.iterator();
+        }
+    }
+}
@@ -21,7 +21,13 @@ import org.acme.foo.Blue;
 import org.acme.foo.Green;
 import org.acme.foo.Red;
 import org.apache.xbean.finder.UrlSet;
+import org.objectweb.asm.ClassReader;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -76,6 +82,46 @@ public class ClasspathArchiveTest extends TestCase {
         }
     }
 
+    public void testGetBytecodeFromArchives() throws Exception {
+        final File jar = Archives.jarArchive(Blue.class, Blue.Navy.class);
+        final File dir = Archives.fileArchive(new Class[]{Green.class, Red.class});
+        final Class[] archived = {Blue.class, Blue.Navy.class, Green.class, Red.class};
+
+        // the loader doesn't see the archives, their classes must be read from the archives themselves
+        final ClassLoader loader = new URLClassLoader(new URL[0], null) {
+            @Override
+            public URL getResource(String name) {
+                for (Class clazz : archived) {
+                    if (name.equals(clazz.getName().replace('.', '/') + ".class")) {
+                        fail("the loader was asked for " + name);
+                    }
+                }
+                return super.getResource(name);
+            }
+        };
+        final ClasspathArchive archive = new ClasspathArchive(loader, jar.toURI().toURL(), dir.toURI().toURL());
+
+        for (Class clazz : archived) {
+            assertEquals(clazz.getName().replace('.', '/'), className(archive.getBytecode(clazz.getName())));
+        }
+        assertEquals("java/lang/Object", className(archive.getBytecode(Object.class.getName())));
+
+        try {
+            archive.getBytecode(Green.Emerald.class.getName());
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    private static String className(InputStream bytecode) throws IOException {
+        try {
+            return new ClassReader(bytecode).getClassName();
+        } finally {
+            bytecode.close();
+        }
+    }
+
     public void testArchives() throws Exception {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 
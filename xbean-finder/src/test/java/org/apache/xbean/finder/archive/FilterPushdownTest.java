@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
+import org.apache.xbean.finder.filter.IncludeExcludeFilter;
+import org.apache.xbean.finder.filter.PackageFilter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class FilterPushdownTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Green.class, Red.class, Red.Pink.class, FullyAnnotated.class, ParamA.class};
+
+    private static final Filter[] filters = {
+            Filters.packages("org.acme.foo"),
+            Filters.classes("org.acme.foo.Blue", "org.acme.bar.ParamA"),
+            Filters.invert(Filters.packages("org.acme.bar")),
+            Filters.patterns(".*Blue.*"),
+            new IncludeExcludeFilter(Filters.prefixes("org.acme"), Filters.packages("org.acme.bar")),
+            Filters.packages("com.acme")
+    };
+
+    private static File jar;
+    private static File dir;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        jar = Archives.jarArchive(classes);
+        dir = Archives.fileArchive(classes);
+    }
+
+    @Test
+    public void jar() throws Exception {
+        assertPushdown(jarArchive());
+    }
+
+    @Test
+    public void mappedJar() throws Exception {
+        assertPushdown(new MappedJarArchive(loader(jar), jar.toURI().toURL()));
+    }
+
+    @Test
+    public void file() throws Exception {
+        assertPushdown(new FileArchive(loader(dir), dir));
+
+        final FileArchive listed = new FileArchive(loader(dir), dir);
+        assertEquals(classes.length, FilteredArchiveTest.list(listed).size());
+        assertPushdown(listed);
+    }
+
+    @Test
+    public void composite() throws Exception {
+        assertPushdown(new CompositeArchive(jarArchive(), new FileArchive(loader(dir), dir), new ClassesArchive(Green.class)));
+    }
+
+    @Test
+    public void skippedJar() throws Exception {
+        final CountingFilter filter = new CountingFilter("com.acme");
+
+        assertFalse(new FilteredArchive(jarArchive(), filter).iterator().hasNext());
+        assertFalse(new FilteredArchive(new FileArchive(loader(dir), dir), filter).iterator().hasNext());
+        assertEquals(0, filter.accepted);
+    }
+
+    @Test
+    public void prunedPackages() throws Exception {
+        final CountingFilter filter = new CountingFilter("org.acme.bar");
+
+        assertEquals(2, FilteredArchiveTest.list(new FilteredArchive(jarArchive(), filter)).size());
+        assertEquals(2, filter.accepted);
+
+        filter.accepted = 0;
+        assertEquals(2, FilteredArchiveTest.list(new FilteredArchive(new FileArchive(loader(dir), dir), filter)).size());
+        assertEquals(2, filter.accepted);
+    }
+
+    private static void assertPushdown(Archive archive) {
+        assertTrue(archive instanceof FilterableArchive);
+
+        for (Filter filter : filters) {
+            final List<String> expected = new ArrayList<String>();
+            for (Archive.Entry entry : archive) {
+                if (filter.accept(entry.getName())) expected.add(entry.getName());
+            }
+
+            assertEquals(filter.toString(), expected, FilteredArchiveTest.list(new FilteredArchive(archive, filter)));
+        }
+    }
+
+    private static JarArchive jarArchive() throws Exception {
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        return new JarArchive(new URLClassLoader(new URL[]{url}), url);
+    }
+
+    private static ClassLoader loader(File file) throws Exception {
+        return new URLClassLoader(new URL[]{file.toURI().toURL()});
+    }
+
+    private static class CountingFilter extends PackageFilter {
+        private int accepted;
+
+        private CountingFilter(String packageName) {
+            super(packageName);
+        }
+
+        @Override
+        public boolean accept(String name) {
+            accepted++;
+            return super.accept(name);
+        }
+    }
+}
@@ -175,6 +175,21 @@ public class MJarJarArchiveTest {
         }
     }
 
+    @Test
+    public void testMappedGetBytecode() throws Exception {
+        final URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, Thread.currentThread().getContextClassLoader());
+        final MappedJarArchive archive = new MappedJarArchive(loader, jar.toURI().toURL());
+        try {
+            final AnnotationFinder finder = new AnnotationFinder(archive, true);
+            assertEquals(1, finder.findAnnotatedMethodInfos(Marker.class.getName()).size());
+        } finally {
+            archive.close();
+        }
+        if (Closeable.class.isInstance(loader)) {
+            Closeable.class.cast(loader).close();
+        }
+    }
+
     @Retention(RUNTIME)
     @Target(METHOD)
     public @interface Marker {}
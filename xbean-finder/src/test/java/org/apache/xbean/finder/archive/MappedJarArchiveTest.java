@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.util.IOUtil;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.apache.xbean.finder.ParallelScanTest.assertSameIndex;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+    private static File classpath;
+    private MappedJarArchive archive;
+    private URL[] urls;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+
+        classpath = Archives.jarArchive(classes);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        urls = new URL[]{new URL("jar:" + classpath.toURI().toURL() + "!/")};
+
+        archive = new MappedJarArchive(new URLClassLoader(urls), urls[0]);
+    }
+
+
+    @Test
+    public void testGetBytecode() throws Exception {
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), Arrays.equals(bytecode(clazz), read(archive.getBytecode(clazz.getName()))));
+        }
+
+        try {
+            archive.getBytecode("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        archive.close();
+        archive.close();
+
+        try {
+            archive.getBytecode(Blue.class.getName());
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testLoadClass() throws Exception {
+        for (Class clazz : classes) {
+            assertEquals(clazz.getName(), clazz, archive.loadClass(clazz.getName()));
+        }
+
+        try {
+            archive.loadClass("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            actual.add(entry.getName());
+
+            final BufferedEntry buffered = (BufferedEntry) entry;
+            final byte[] buffer = new byte[buffered.getSize()];
+            buffered.read(buffer);
+            assertTrue(entry.getName(), Arrays.equals(read(entry.getBytecode()), buffer));
+        }
+
+        assertFalse(0 == actual.size());
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), actual.contains(clazz.getName()));
+        }
+
+        assertEquals(classes.length, actual.size());
+    }
+
+    @Test
+    public void testSameIndexAsJarArchive() throws Exception {
+        final AnnotationFinder expected = new AnnotationFinder(new JarArchive(new URLClassLoader(urls), urls[0]), false);
+        assertSameIndex(expected, new AnnotationFinder(archive, false));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameIndex(expected, new AnnotationFinder(archive, false, executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStoredEntries() throws Exception {
+        final File jar = File.createTempFile("stored", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+        for (Class clazz : classes) {
+            final byte[] bytes = bytecode(clazz);
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            final ZipEntry entry = new ZipEntry(clazz.getName().replace('.', '/') + ".class");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+        out.setComment("a jar comment");
+        out.close();
+
+        final MappedJarArchive stored = new MappedJarArchive(getClass().getClassLoader(), jar.toURI().toURL());
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), Arrays.equals(bytecode(clazz), read(stored.getBytecode(clazz.getName()))));
+        }
+        assertSameIndex(new AnnotationFinder(archive, false), new AnnotationFinder(stored, false));
+    }
+
+    private static byte[] bytecode(Class clazz) throws Exception {
+        final InputStream in = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        assertNotNull(in);
+        return read(in);
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IOUtil.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.AnnotationFinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fails the test when a class is loaded, for the queries answered from the infos alone.
+ *
+ * @version $Rev$ $Date$
+ */
+public class NoLoadingArchive implements Archive {
+    private final Archive archive;
+
+    public NoLoadingArchive(Archive archive) {
+        this.archive = archive;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return archive.getBytecode(className);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        throw new AssertionError("loaded " + className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return archive.iterator();
+    }
+
+    public static List<String> classNames(Class<?>... classes) {
+        return classNames(Arrays.asList(classes));
+    }
+
+    public static List<String> classNames(Collection<? extends Class<?>> classes) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    public static List<String> infoNames(Collection<? extends AnnotationFinder.Info> infos) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.Info info : infos) {
+            names.add(info.getName());
+        }
+        return names;
+    }
+}